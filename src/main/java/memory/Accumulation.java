@@ -0,0 +1,11 @@
+package memory;
+/**
+ * How dot products and vector-matrix products sum their terms for FLOAT32 vectors.
+ * NATIVE rounds every product and partial sum to float, exactly like float arithmetic.
+ * DOUBLE keeps the running sum in double and rounds once when the result is stored.
+ * FLOAT64 vectors always accumulate in double.
+ */
+public enum Accumulation {
+    NATIVE,
+    DOUBLE
+}
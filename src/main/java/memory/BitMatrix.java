@@ -0,0 +1,151 @@
+package memory;
+
+/**
+ * A 0/1 matrix packed 64 entries per long, row by row.
+ * Used for adjacency matrices, where it takes 1/64 of the memory of double rows
+ * and lets multiplication work on whole words at a time.
+ * Immutable once built, so it can be read by any number of tasks without locking.
+ */
+public class BitMatrix {
+
+    private final int rows;
+    private final int cols;
+    private final long[][] words; // words[i][w] holds columns 64*w .. 64*w+63 of row i
+
+    public BitMatrix(int rows, int cols) {
+        if (rows <= 0 || cols <= 0) throw new IllegalArgumentException("BitMatrix must have at least one row and one column");
+        this.rows = rows;
+        this.cols = cols;
+        this.words = new long[rows][wordCount(cols)];
+    }
+
+    /**
+     * Returns true if the matrix is rectangular, non-empty and every entry is exactly 0 or 1.
+     */
+    public static boolean isBinary(double[][] matrix) {
+        if (matrix == null || matrix.length == 0 || matrix[0] == null || matrix[0].length == 0) return false;
+        int cols = matrix[0].length;
+        for (double[] row : matrix) {
+            if (row == null || row.length != cols) return false;
+            for (double value : row) {
+                if (value != 0.0 && value != 1.0) return false;
+            }
+        }
+        return true;
+    }
+
+    public static BitMatrix fromDense(double[][] matrix) {
+        if (!isBinary(matrix)) throw new IllegalArgumentException("Matrix entries must all be 0 or 1");
+        BitMatrix bits = new BitMatrix(matrix.length, matrix[0].length);
+        for (int i = 0; i < matrix.length; i++) {
+            for (int j = 0; j < matrix[i].length; j++) {
+                if (matrix[i][j] == 1.0) bits.set(i, j);
+            }
+        }
+        return bits;
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int cols() {
+        return cols;
+    }
+
+    public boolean get(int row, int col) {
+        checkIndex(row, col);
+        return (words[row][col >>> 6] & (1L << col)) != 0;
+    }
+
+    // only used while building a matrix, before it is shared
+    private void set(int row, int col) {
+        words[row][col >>> 6] |= 1L << col;
+    }
+
+    public double[][] toDense() {
+        double[][] dense = new double[rows][cols];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                if ((words[i][j >>> 6] & (1L << j)) != 0) dense[i][j] = 1.0;
+            }
+        }
+        return dense;
+    }
+
+    public BitMatrix transpose() {
+        BitMatrix t = new BitMatrix(cols, rows);
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                if ((words[i][j >>> 6] & (1L << j)) != 0) t.set(j, i);
+            }
+        }
+        return t;
+    }
+
+    /**
+     * Boolean-semiring product of one row: out = OR of right's rows k for every k set in this row.
+     * out must have right's word count and is overwritten.
+     */
+    public void booleanMultiplyRow(int row, BitMatrix right, long[] out) {
+        checkMultiply(right);
+        java.util.Arrays.fill(out, 0L);
+        long[] a = words[row];
+        for (int w = 0; w < a.length; w++) {
+            long bits = a[w];
+            while (bits != 0) {
+                int k = (w << 6) + Long.numberOfTrailingZeros(bits);
+                long[] b = right.words[k];
+                for (int x = 0; x < out.length; x++) {
+                    out[x] |= b[x];
+                }
+                bits &= bits - 1;
+            }
+        }
+    }
+
+    /**
+     * Counting product of one row: out[j] = number of k with this[row][k] = right[k][j] = 1,
+     * i.e. the number of length-2 paths from row to j.
+     * Takes the right operand already transposed, so every entry is a popcount of ANDed words.
+     */
+    public void countMultiplyRow(int row, BitMatrix rightTransposed, double[] out) {
+        if (rightTransposed.cols != cols) throw new IllegalArgumentException("Dimensions mismatch");
+        long[] a = words[row];
+        for (int j = 0; j < rightTransposed.rows; j++) {
+            long[] b = rightTransposed.words[j];
+            int count = 0;
+            for (int w = 0; w < a.length; w++) {
+                count += Long.bitCount(a[w] & b[w]);
+            }
+            out[j] = count;
+        }
+    }
+
+    /**
+     * Wraps rows computed by booleanMultiplyRow into a matrix, without copying them.
+     */
+    public static BitMatrix fromRows(long[][] rowWords, int cols) {
+        BitMatrix bits = new BitMatrix(rowWords.length, cols);
+        for (int i = 0; i < rowWords.length; i++) {
+            if (rowWords[i].length != bits.words[i].length) throw new IllegalArgumentException("Row " + i + " has the wrong number of words");
+            bits.words[i] = rowWords[i];
+        }
+        return bits;
+    }
+
+    public static int wordCount(int cols) {
+        return (cols + 63) >>> 6;
+    }
+
+    private void checkMultiply(BitMatrix right) {
+        if (right == null) throw new IllegalArgumentException("Matrix cannot be null");
+        if (right.rows != cols) throw new IllegalArgumentException("Dimensions mismatch");
+    }
+
+    private void checkIndex(int row, int col) {
+        if (row < 0 || row >= rows || col < 0 || col >= cols) {
+            throw new IndexOutOfBoundsException("(" + row + "," + col + ") is outside a " + rows + "x" + cols + " matrix");
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package memory;
+
+/**
+ * Where the non-zero entries of a square matrix can be, described by its lower and upper bandwidth:
+ * every non-zero (i, j) satisfies i - lower <= j <= i + upper.
+ * Diagonal, triangular and banded matrices are all special cases, and identity is a diagonal of ones.
+ * Immutable.
+ */
+public final class MatrixStructure {
+
+    public enum Kind {
+        IDENTITY,
+        DIAGONAL,
+        LOWER_TRIANGULAR,
+        UPPER_TRIANGULAR,
+        BANDED,
+        GENERAL
+    }
+
+    // banded kernels only pay off when the band is a small part of the row
+    private static final int BANDED_FRACTION = 4;
+
+    public static final MatrixStructure GENERAL = new MatrixStructure(Kind.GENERAL, -1, -1, -1);
+
+    private final Kind kind;
+    private final int size;  // rows = columns, -1 for GENERAL
+    private final int lower; // -1 for GENERAL
+    private final int upper; // -1 for GENERAL
+
+    private MatrixStructure(Kind kind, int size, int lower, int upper) {
+        this.kind = kind;
+        this.size = size;
+        this.lower = lower;
+        this.upper = upper;
+    }
+
+    /**
+     * Scans the matrix once. Non-square matrices are always GENERAL.
+     */
+    public static MatrixStructure analyze(double[][] matrix) {
+        if (matrix == null || matrix.length == 0 || matrix[0] == null || matrix[0].length != matrix.length) {
+            return GENERAL;
+        }
+        for (double[] row : matrix) {
+            if (row == null || row.length != matrix.length) return GENERAL;
+        }
+        return analyze(matrix.length, (i, j) -> matrix[i][j]);
+    }
+
+    /**
+     * Same as analyze(double[][]), reading the packed bits directly.
+     */
+    public static MatrixStructure analyze(BitMatrix matrix) {
+        if (matrix == null || matrix.rows() != matrix.cols()) {
+            return GENERAL;
+        }
+        return analyze(matrix.rows(), (i, j) -> matrix.get(i, j) ? 1.0 : 0.0);
+    }
+
+    private interface Entries {
+        double at(int row, int col);
+    }
+
+    private static MatrixStructure analyze(int n, Entries entries) {
+        int lower = 0;
+        int upper = 0;
+        boolean onesOnDiagonal = true;
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                if (entries.at(i, j) == 0.0) continue;
+                if (j < i) lower = Math.max(lower, i - j);
+                else if (j > i) upper = Math.max(upper, j - i);
+            }
+            if (entries.at(i, i) != 1.0) onesOnDiagonal = false;
+        }
+        return of(n, lower, upper, onesOnDiagonal);
+    }
+
+    private static MatrixStructure of(int n, int lower, int upper, boolean onesOnDiagonal) {
+        if (lower == 0 && upper == 0) {
+            return new MatrixStructure(onesOnDiagonal ? Kind.IDENTITY : Kind.DIAGONAL, n, 0, 0);
+        }
+        if (Math.max(lower, upper) * BANDED_FRACTION < n) {
+            return new MatrixStructure(Kind.BANDED, n, lower, upper);
+        }
+        if (upper == 0) {
+            return new MatrixStructure(Kind.LOWER_TRIANGULAR, n, lower, 0);
+        }
+        if (lower == 0) {
+            return new MatrixStructure(Kind.UPPER_TRIANGULAR, n, 0, upper);
+        }
+        return GENERAL;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Number of rows (and columns), or -1 for GENERAL.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    public int getLowerBandwidth() {
+        return lower;
+    }
+
+    public int getUpperBandwidth() {
+        return upper;
+    }
+
+    /**
+     * True for every kind except GENERAL: the non-zeros of row i lie in columns firstColumn(i)..lastColumn(i).
+     */
+    public boolean isBanded() {
+        return kind != Kind.GENERAL;
+    }
+
+    public int firstColumn(int row) {
+        return Math.max(0, row - lower);
+    }
+
+    public int lastColumn(int row) {
+        return Math.min(size - 1, row + upper);
+    }
+
+    /**
+     * Structure of the negated matrix: the same zeros, but the diagonal of an identity becomes -1.
+     */
+    public MatrixStructure negated() {
+        if (kind == Kind.IDENTITY) {
+            return new MatrixStructure(Kind.DIAGONAL, size, 0, 0);
+        }
+        return this;
+    }
+
+    /**
+     * Structure of the transposed matrix: lower and upper bandwidths swap.
+     */
+    public MatrixStructure transposed() {
+        if (kind == Kind.GENERAL) {
+            return this;
+        }
+        return of(size, upper, lower, kind == Kind.IDENTITY);
+    }
+
+    @Override
+    public String toString() {
+        if (kind == Kind.BANDED) {
+            return "BANDED(" + lower + "," + upper + ")";
+        }
+        return kind.toString();
+    }
+}
@@ -0,0 +1,9 @@
+package memory;
+/**
+ * Element type used to store the values of a SharedVector.
+ * FLOAT32 halves the memory of every vector; values are rounded to float when written.
+ */
+public enum Precision {
+    FLOAT64,
+    FLOAT32
+}
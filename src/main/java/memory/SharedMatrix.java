@@ -1,14 +1,71 @@
 package memory;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * A matrix kept as an array of row or column vectors.
+ *
+ * The vector array is replaced whole, never changed in place, so the shape and orientation are
+ * read without locking. The values are guarded by STRIPES read-write locks shared by the vectors,
+ * vector i taking lock i % STRIPES: neighbouring rows, which run on different workers, rarely
+ * contend, and whole-matrix reads acquire each stripe once instead of locking every vector.
+ * Locks are always taken in the order of their identity hash, by whole-matrix reads and vector
+ * operations alike, so no two threads wait on each other.
+ */
 public class SharedMatrix {
 
+    /** Runs every task of a list on the calling thread, one after another. */
+    public static final Consumer<List<Runnable>> SERIAL = tasks -> tasks.forEach(Runnable::run);
+
+    static final int BLOCK = 64; // vectors per task, and the side of a transpose tile
+    static final long PARALLEL_MIN_ELEMENTS = 1 << 15; // smaller copies stay on the calling thread
+    static final int STRIPES = 64; // locks per matrix, enough for every worker to hold its own
+
     private volatile SharedVector[] vectors = {}; // underlying vectors
+    private final VectorFormat format; // how loaded vectors store their values
 
     public SharedMatrix() {
+        this.format = VectorFormat.DEFAULT;
+        vectors = new SharedVector[0];
+    }
+
+    private SharedMatrix(VectorFormat format) {
+        this.format = format;
         vectors = new SharedVector[0];
     }
 
+    /**
+     * Empty matrix whose loads will store their vectors in the given mode.
+     */
+    public static SharedMatrix empty(StorageMode storageMode) {
+        return new SharedMatrix(VectorFormat.of(storageMode));
+    }
+
+    /**
+     * Empty matrix whose loads will store their vectors in the given format.
+     */
+    public static SharedMatrix empty(VectorFormat format) {
+        return new SharedMatrix(format);
+    }
+
     public SharedMatrix(double[][] matrix) {
+        this(matrix, VectorFormat.DEFAULT);
+    }
+
+    public SharedMatrix(double[][] matrix, StorageMode storageMode) {
+        this(matrix, VectorFormat.of(storageMode));
+    }
+
+    public SharedMatrix(double[][] matrix, VectorFormat format) {
+    this.format = format;
     if (matrix == null || matrix.length == 0) {
         this.vectors = new SharedVector[0];
         return; 
@@ -19,7 +76,7 @@ public class SharedMatrix {
         }
         
         int expectedCols = matrix[0].length;
-        this.vectors = new SharedVector[matrix.length];
+        SharedVector[] loaded = new SharedVector[matrix.length];
         
         for (int i = 0; i < matrix.length; i++) {
             if (matrix[i] == null) {
@@ -28,140 +85,288 @@ public class SharedMatrix {
             if (matrix[i].length != expectedCols) {
                 throw new IllegalArgumentException("Inconsistent row lengths at row " + i);
             }
-            this.vectors[i] = new SharedVector(matrix[i], VectorOrientation.ROW_MAJOR);
+            loaded[i] = new SharedVector(matrix[i], VectorOrientation.ROW_MAJOR, format);
         }
+        this.vectors = striped(loaded);
     }
 }
 
+    /**
+     * Row-major copy of the matrix in MAPPED vectors, all backed by one temp file created in directory.
+     * The OS keeps as much of it in memory as it has room for and reads the rest back on access.
+     */
+    public static SharedMatrix mapped(double[][] matrix, VectorFormat format, Path directory) throws IOException {
+        if (matrix == null || directory == null) throw new IllegalArgumentException("matrix and directory cannot be null");
+        VectorFormat mappedFormat = format.withStorageMode(StorageMode.MAPPED);
+        SharedMatrix mapped = new SharedMatrix(mappedFormat);
+        if (matrix.length == 0) return mapped;
+        int[] lengths = new int[matrix.length];
+        for (int i = 0; i < matrix.length; i++) {
+            if (matrix[i] == null) throw new IllegalArgumentException("Row " + i + " cannot be null");
+            if (matrix[i].length != matrix[0].length) throw new IllegalArgumentException("Inconsistent row lengths at row " + i);
+            lengths[i] = matrix[i].length;
+        }
+        VectorStorage[] storages = VectorStorage.mapFile(lengths, format.getPrecision(), directory);
+        SharedVector[] vectors = new SharedVector[matrix.length];
+        for (int i = 0; i < matrix.length; i++) {
+            for (int j = 0; j < lengths[i]; j++) {
+                storages[i].set(j, matrix[i][j]);
+            }
+            vectors[i] = new SharedVector(storages[i], VectorOrientation.ROW_MAJOR, mappedFormat);
+        }
+        mapped.vectors = striped(vectors);
+        return mapped;
+    }
+
+    /**
+     * Copy of the matrix in MAPPED vectors of the same orientation and precision, all backed by
+     * one temp file created in directory. Each vector is copied straight into its mapping, so the
+     * values are never held on the heap on the way.
+     */
+    public static SharedMatrix mapped(SharedMatrix source, Path directory) throws IOException {
+        if (source == null || directory == null) throw new IllegalArgumentException("source and directory cannot be null");
+        VectorFormat mappedFormat = source.format.withStorageMode(StorageMode.MAPPED);
+        SharedMatrix mapped = new SharedMatrix(mappedFormat);
+        SharedVector[] vecs = source.vectors;
+        if (vecs.length == 0) return mapped;
+        List<ReadWriteLock> locks = acquireAllVectorReadLocks(vecs);
+        try {
+            int[] lengths = new int[vecs.length];
+            for (int i = 0; i < vecs.length; i++) {
+                lengths[i] = vecs[i].length();
+            }
+            VectorStorage[] storages = VectorStorage.mapFile(lengths, mappedFormat.getPrecision(), directory);
+            SharedVector[] vectors = new SharedVector[vecs.length];
+            for (int i = 0; i < vecs.length; i++) {
+                vecs[i].writeInto(storages[i]);
+                vectors[i] = new SharedVector(storages[i], vecs[i].getOrientation(), mappedFormat);
+            }
+            mapped.vectors = striped(vectors);
+            return mapped;
+        } finally {
+            releaseAllVectorReadLocks(locks);
+        }
+    }
+
     public void loadRowMajor(double[][] matrix) {
-    if (matrix == null || matrix.length == 0) {
-        this.vectors = new SharedVector[0];
-        return;
+        loadRowMajor(matrix, SERIAL);
     }
 
-    int expectedCols = matrix[0].length;
-    this.vectors = new SharedVector[matrix.length];
-    
-    for (int i = 0; i < matrix.length; i++) {
-        if (matrix[i] == null) throw new IllegalArgumentException("Row cannot be null");
-        if (matrix[i].length != expectedCols) throw new IllegalArgumentException("Inconsistent row lengths");
-        
-        this.vectors[i] = new SharedVector(matrix[i], VectorOrientation.ROW_MAJOR);
+    /**
+     * Like loadRowMajor(matrix), copying blocks of rows as tasks handed to runner, which must
+     * run them all before returning (for example on the engine's executor).
+     */
+    public void loadRowMajor(double[][] matrix, Consumer<List<Runnable>> runner) {
+        if (matrix == null || matrix.length == 0) {
+            this.vectors = new SharedVector[0];
+            return;
+        }
+        if (matrix[0] == null) throw new IllegalArgumentException("Row cannot be null");
+        int expectedCols = matrix[0].length;
+        for (double[] row : matrix) {
+            if (row == null) throw new IllegalArgumentException("Row cannot be null");
+            if (row.length != expectedCols) throw new IllegalArgumentException("Inconsistent row lengths");
+        }
+
+        SharedVector[] loaded = new SharedVector[matrix.length];
+        runBlocks(matrix.length, (long) matrix.length * expectedCols, runner, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                loaded[i] = new SharedVector(matrix[i], VectorOrientation.ROW_MAJOR, format);
+            }
+        });
+        this.vectors = striped(loaded);
     }
-}
 
     public void loadColumnMajor(double[][] matrix) {
-    if (matrix == null || matrix.length == 0) {
-        this.vectors = new SharedVector[0];
-        return;
+        loadColumnMajor(matrix, SERIAL);
     }
 
-    int rows = matrix.length;
-    if (matrix[0] == null) throw new IllegalArgumentException("Row is null");
-    int cols = matrix[0].length;
+    /**
+     * Like loadColumnMajor(matrix), transposing blocks of columns as tasks handed to runner.
+     * Each task reads BLOCK values of a row at a time and writes them to BLOCK columns, so the
+     * lines of all its columns stay in cache while it walks down the rows.
+     */
+    public void loadColumnMajor(double[][] matrix, Consumer<List<Runnable>> runner) {
+        if (matrix == null || matrix.length == 0) {
+            this.vectors = new SharedVector[0];
+            return;
+        }
 
-    for (int i = 0; i < rows; i++) {
-        if (matrix[i] == null) throw new IllegalArgumentException("Row " + i + " is null");
-        if (matrix[i].length != cols) throw new IllegalArgumentException("Inconsistent row lengths");
-    }
+        int rows = matrix.length;
+        if (matrix[0] == null) throw new IllegalArgumentException("Row is null");
+        int cols = matrix[0].length;
 
-    this.vectors = new SharedVector[cols];
-    for (int j = 0; j < cols; j++) {
-        double[] colData = new double[rows];
         for (int i = 0; i < rows; i++) {
-            colData[i] = matrix[i][j];
+            if (matrix[i] == null) throw new IllegalArgumentException("Row " + i + " is null");
+            if (matrix[i].length != cols) throw new IllegalArgumentException("Inconsistent row lengths");
         }
-        this.vectors[j] = new SharedVector(colData, VectorOrientation.COLUMN_MAJOR);
+
+        SharedVector[] loaded = new SharedVector[cols];
+        runBlocks(cols, (long) rows * cols, runner, (from, to) -> {
+            double[][] colData = new double[to - from][rows];
+            for (int i = 0; i < rows; i++) {
+                double[] row = matrix[i];
+                for (int j = from; j < to; j++) {
+                    colData[j - from][i] = row[j];
+                }
+            }
+            for (int j = from; j < to; j++) {
+                loaded[j] = new SharedVector(colData[j - from], VectorOrientation.COLUMN_MAJOR, format);
+            }
+        });
+        this.vectors = striped(loaded);
     }
-}
 
     public double[][] readRowMajor() {
-        if (vectors == null) throw new IllegalArgumentException("Matrix has no vectors");
-        if (vectors.length == 0) return new double[0][0];
-        if (vectors[0] == null) throw new IllegalArgumentException("Matrix has null vector");
-        acquireAllVectorReadLocks(vectors);
+        return readRowMajor(SERIAL);
+    }
+
+    /**
+     * Like readRowMajor(), copying blocks of rows as tasks handed to runner. A column-major
+     * matrix is transposed in BLOCK x BLOCK tiles: a task copies BLOCK entries of a column at a
+     * time into BLOCK rows whose lines stay in cache until the next column.
+     * The calling thread read-locks every stripe once for the whole copy.
+     */
+    public double[][] readRowMajor(Consumer<List<Runnable>> runner) {
+        SharedVector[] vecs = vectors;
+        if (vecs == null) throw new IllegalArgumentException("Matrix has no vectors");
+        if (vecs.length == 0) return new double[0][0];
+        if (vecs[0] == null) throw new IllegalArgumentException("Matrix has null vector");
+        List<ReadWriteLock> locks = acquireAllVectorReadLocks(vecs);
         try {
-            if(this.vectors[0].getOrientation() == VectorOrientation.ROW_MAJOR) {
-                int rows = vectors.length;
-                int cols = vectors[0].length();
-                if(rows == 0) throw new IllegalArgumentException("Matrix has no rows");
-                double[][] ret = new double[rows][cols];
-                for (int i = 0; i < rows; i++) {
-                    for (int j = 0; j < cols; j++) {
-                        ret[i][j] = vectors[i].get(j);
+            if (vecs[0].getOrientation() == VectorOrientation.ROW_MAJOR) {
+                int rows = vecs.length;
+                int cols = vecs[0].length();
+                double[][] ret = new double[rows][];
+                runBlocks(rows, (long) rows * cols, runner, (from, to) -> {
+                    for (int i = from; i < to; i++) {
+                        ret[i] = new double[cols];
+                        vecs[i].readInto(0, ret[i], 0, cols);
                     }
-                }
+                });
                 return ret;
             }
-            else{
-                int cols = vectors.length;
-                int rows = vectors[0].length();
-                if(cols == 0) throw new IllegalArgumentException("Matrix has no rows");
-                double[][] ret = new double[rows][cols];
-                for (int i = 0; i < rows; i++) {
+            int cols = vecs.length;
+            int rows = vecs[0].length();
+            double[][] ret = new double[rows][];
+            runBlocks(rows, (long) rows * cols, runner, (from, to) -> {
+                for (int i = from; i < to; i++) {
+                    ret[i] = new double[cols];
+                }
+                double[] tile = new double[BLOCK];
+                for (int top = from; top < to; top += BLOCK) {
+                    int height = Math.min(BLOCK, to - top);
                     for (int j = 0; j < cols; j++) {
-                        ret[i][j] = vectors[j].get(i);
+                        vecs[j].readInto(top, tile, 0, height);
+                        for (int i = 0; i < height; i++) {
+                            ret[top + i][j] = tile[i];
+                        }
                     }
                 }
-                return ret;
-            }
-            
+            });
+            return ret;
         } finally {
-            releaseAllVectorReadLocks(vectors);
+            releaseAllVectorReadLocks(locks);
         }
     }
 
-    public SharedVector get(int index) {
-        vectors[index].readLock();
-        try {
-            return vectors[index];
-        } finally {
-            vectors[index].readUnlock();
+    private interface Block {
+        void copy(int from, int to);
+    }
+
+    // Splits 0..count into BLOCK-sized tasks for runner, or copies on this thread when the matrix is small
+    private static void runBlocks(int count, long elements, Consumer<List<Runnable>> runner, Block block) {
+        if (elements < PARALLEL_MIN_ELEMENTS || count <= BLOCK) {
+            block.copy(0, count);
+            return;
+        }
+        List<Runnable> tasks = new ArrayList<>();
+        for (int from = 0; from < count; from += BLOCK) {
+            int start = from;
+            int end = Math.min(count, from + BLOCK);
+            tasks.add(() -> block.copy(start, end));
         }
+        runner.accept(tasks);
+    }
+
+    public SharedVector get(int index) {
+        return vectors[index];
     }
 
     public int length() {
-        acquireAllVectorReadLocks(vectors);
-        try {
-            return vectors.length;
-        } finally {
-            releaseAllVectorReadLocks(vectors);
-        }
+        return vectors.length;
     }
 
     public VectorOrientation getOrientation() {
-        acquireAllVectorReadLocks(vectors);
-        try {
-            if (vectors.length == 0) {
-                throw new IllegalStateException("Matrix has no vectors to determine orientation");
-            }
-            return vectors[0].getOrientation();
-        } finally {
-            releaseAllVectorReadLocks(vectors);
+        SharedVector[] vecs = vectors;
+        if (vecs.length == 0) {
+            throw new IllegalStateException("Matrix has no vectors to determine orientation");
         }
+        return vecs[0].getOrientation();
     }
 
-    private void acquireAllVectorReadLocks(SharedVector[] vecs) {
-        for (SharedVector vec : vecs) {
-            vec.readLock();
+    /** Approximate size of the stored values in bytes, for bounding the work queued on them. */
+    public long estimatedBytes() {
+        SharedVector[] vecs = vectors;
+        if (vecs.length == 0) return 0;
+        long elementBytes = format.getPrecision() == Precision.FLOAT32 ? Float.BYTES : Double.BYTES;
+        return (long) vecs.length * vecs[0].length() * elementBytes; // every vector has the same length
+    }
+
+    public StorageMode getStorageMode() {
+        return format.getStorageMode();
+    }
+
+    public VectorFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Frees the storage of every vector and empties the matrix.
+     * Off-heap matrices should be released as soon as their values are no longer needed.
+     */
+    public void release() {
+        SharedVector[] old = vectors;
+        vectors = new SharedVector[0];
+        for (SharedVector vec : old) {
+            vec.release();
         }
     }
 
-    private void releaseAllVectorReadLocks(SharedVector[] vecs) {
-        for (SharedVector vec : vecs) {
-            vec.readUnlock();
+    // Gives the vectors their stripe locks; called before the array is published
+    private static SharedVector[] striped(SharedVector[] vecs) {
+        ReadWriteLock[] stripes = new ReadWriteLock[Math.min(vecs.length, STRIPES)];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantReadWriteLock();
         }
+        for (int i = 0; i < vecs.length; i++) {
+            vecs[i].shareLock(stripes[i % stripes.length]);
+        }
+        return vecs;
     }
 
-    private void acquireAllVectorWriteLocks(SharedVector[] vecs) {
+    // Every distinct lock of the vectors, in the global order locks are taken in
+    private static List<ReadWriteLock> locksOf(SharedVector[] vecs) {
+        IdentityHashMap<ReadWriteLock, Boolean> locks = new IdentityHashMap<>();
         for (SharedVector vec : vecs) {
-            vec.writeLock();
+            locks.put(vec.lock(), Boolean.TRUE);
         }
+        List<ReadWriteLock> ordered = new ArrayList<>(locks.keySet());
+        ordered.sort(Comparator.comparingInt(System::identityHashCode));
+        return ordered;
     }
 
-    private void releaseAllVectorWriteLocks(SharedVector[] vecs) {
-        for (SharedVector vec : vecs) {
-            vec.writeUnlock();
+    private static List<ReadWriteLock> acquireAllVectorReadLocks(SharedVector[] vecs) {
+        List<ReadWriteLock> locks = locksOf(vecs);
+        for (ReadWriteLock lock : locks) {
+            lock.readLock().lock();
+        }
+        return locks;
+    }
+
+    private static void releaseAllVectorReadLocks(List<ReadWriteLock> locks) {
+        for (ReadWriteLock lock : locks) {
+            lock.readLock().unlock();
         }
     }
 }
\ No newline at end of file
@@ -4,21 +4,56 @@ import java.util.concurrent.locks.ReadWriteLock;
 
 public class SharedVector {
 
-    private double[] vector;
-    private VectorOrientation orientation;
-    private ReadWriteLock lock = new java.util.concurrent.locks.ReentrantReadWriteLock();
+    private VectorStorage vector;
+    private final VectorFormat format;
+    private volatile VectorOrientation orientation; // read without the lock
+    private ReadWriteLock lock = new java.util.concurrent.locks.ReentrantReadWriteLock(); // may be shared, see shareLock
 
     public SharedVector(double[] vector, VectorOrientation orientation)  {
+        this(vector, orientation, StorageMode.HEAP);
+    }
+
+    /**
+     * HEAP vectors share the given array, OFF_HEAP vectors copy it into an aligned direct buffer.
+     */
+    public SharedVector(double[] vector, VectorOrientation orientation, StorageMode mode)  {
+        this(vector, orientation, VectorFormat.of(mode));
+    }
+
+    /**
+     * Heap FLOAT64 vectors share the given array, every other format copies (and possibly rounds) it.
+     */
+    public SharedVector(double[] vector, VectorOrientation orientation, VectorFormat format)  {
 
         if(vector.length == 0) throw new IllegalArgumentException("vector has no values.");
-        this.vector = vector;
+        this.vector = VectorStorage.copyOf(vector, format.getStorageMode(), format.getPrecision());
+        this.orientation = orientation;
+        this.format = format;
+    }
+
+    // Takes over storage that already holds the values
+    SharedVector(VectorStorage storage, VectorOrientation orientation, VectorFormat format) {
+        this.vector = storage;
         this.orientation = orientation;
+        this.format = format;
+    }
+
+    // Copies every value into dest, which has this vector's length; the caller holds this vector's lock
+    void writeInto(VectorStorage dest) {
+        for (int i = 0; i < vector.length(); i++) {
+            dest.set(i, vector.get(i));
+        }
+    }
+
+    // Copies count values starting at from into dest; the caller holds this vector's lock
+    void readInto(int from, double[] dest, int destFrom, int count) {
+        vector.copyTo(from, dest, destFrom, count);
     }
 
     public double get(int index) {
         readLock();
         try{
-            return vector[index];
+            return vector.get(index);
         }
 
         finally{
@@ -30,7 +65,7 @@ public class SharedVector {
     public int length() {
         readLock();
         try{
-            return vector.length;
+            return vector.length();
         }
 
         finally{
@@ -39,9 +74,13 @@ public class SharedVector {
     }
 
     public VectorOrientation getOrientation() {
-         readLock();
+        return orientation;
+    }
+
+    public StorageMode getStorageMode() {
+        readLock();
         try{
-            return orientation;
+            return vector.mode();
         }
 
         finally{
@@ -49,6 +88,41 @@ public class SharedVector {
         }
     }
 
+    public VectorFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Frees the backing storage. Any later access to this vector throws IllegalStateException.
+     */
+    public void release() {
+        writeLock();
+        try{
+            vector.release();
+        }
+
+        finally{
+            writeUnlock();
+        }
+    }
+
+    /**
+     * Makes this vector guard its values with a lock it shares with other vectors, for example
+     * the other vectors of its stripe in a SharedMatrix. Only before the vector is published.
+     */
+    void shareLock(ReadWriteLock lock) {
+        this.lock = lock;
+    }
+
+    ReadWriteLock lock() {
+        return lock;
+    }
+
+    // Whether this vector's lock comes before other's in the global order locks are taken in
+    private boolean locksBefore(SharedVector other) {
+        return System.identityHashCode(lock) < System.identityHashCode(other.lock);
+    }
+
     public void writeLock() {
         lock.writeLock().lock();
     }
@@ -87,26 +161,99 @@ public class SharedVector {
         if (this.length() != other.length()) throw new IllegalArgumentException("Vectors must be of the same length to add.");
         if (this.getOrientation() != other.getOrientation()) throw new IllegalArgumentException("Vectors must be of the same orientation.");
 
-        // Deadlock prevention 
-        SharedVector first = System.identityHashCode(this) < System.identityHashCode(other) ? this : other;
-        SharedVector second = first == this ? other : this;
+        lockForUpdate(other);
+        try {
+            for (int i = 0; i < this.vector.length(); i++) {
+                this.vector.set(i, this.vector.get(i) + other.get(i));
+            }
+        } finally {
+            unlockForUpdate(other);
+        }
+    }
+
+    /**
+     * this = alpha * x + beta * this, in one pass over this vector.
+     */
+    public void scaleAdd(double alpha, SharedVector x, double beta) {
+        if (x == null) throw new IllegalArgumentException("Other vector cannot be null");
+        if (this.length() != x.length()) throw new IllegalArgumentException("Vectors must be of the same length to add.");
+        if (this.getOrientation() != x.getOrientation()) throw new IllegalArgumentException("Vectors must be of the same orientation.");
 
-        first.writeLock(); 
-        second.readLock();
+        lockForUpdate(x);
         try {
-            for (int i = 0; i < this.vector.length; i++) {
-                this.vector[i] += other.get(i);
+            for (int i = 0; i < this.vector.length(); i++) {
+                this.vector.set(i, alpha * x.vector.get(i) + beta * this.vector.get(i));
+            }
+        } finally {
+            unlockForUpdate(x);
+        }
+    }
+
+    /**
+     * this = alpha * (row * matrix) + beta * this, where row is a ROW_MAJOR vector of another matrix.
+     * The product row is accumulated in a scratch array and added straight into this vector,
+     * so the product is never stored as a vector of its own.
+     */
+    public void mulAdd(double alpha, SharedVector row, SharedMatrix matrix, double beta) {
+        if (row == null || matrix == null) throw new IllegalArgumentException("Operands cannot be null");
+        mulAdd(alpha, row, matrix.readRowMajor(), beta);
+    }
+
+    /**
+     * Same as mulAdd(alpha, row, matrix, beta) on values already read from the matrix.
+     */
+    public void mulAdd(double alpha, SharedVector row, double[][] m, double beta) {
+        if (row == null || m == null) throw new IllegalArgumentException("Operands cannot be null");
+        lockForUpdate(row);
+        try {
+            if (m.length == 0 || row.vector.length() != m.length) throw new IllegalArgumentException("Vectors length and the number of matrix rows must be of the same to multiplication.");
+            if (vector.length() != m[0].length) throw new IllegalArgumentException("Vector length must match the number of matrix columns to add the product.");
+            if (row.orientation != VectorOrientation.ROW_MAJOR || orientation != VectorOrientation.ROW_MAJOR) throw new IllegalArgumentException("Vectors must be ROW_MAJOR for vector-matrix multiplication.");
+
+            int column = m[0].length;
+            double[] sums = new double[column];
+            for (int j = 0; j < m.length; j++) {
+                double value = row.vector.get(j);
+                double[] matrixRow = m[j];
+                for (int i = 0; i < column; i++) {
+                    sums[i] = accumulate(sums[i], value * matrixRow[i]);
+                }
+            }
+            for (int i = 0; i < column; i++) {
+                vector.set(i, alpha * round(sums[i]) + beta * vector.get(i));
             }
         } finally {
-            second.readUnlock();
-            first.writeUnlock();
+            unlockForUpdate(row);
+        }
+    }
+
+    // write lock on this, read lock on other, taken in a global order to prevent deadlocks;
+    // vectors sharing a lock only take the write lock, which covers reading the other
+    private void lockForUpdate(SharedVector other) {
+        if (other.lock == lock) {
+            writeLock();
+        }
+        else if (locksBefore(other)) {
+            writeLock();
+            other.readLock();
+        }
+        else {
+            other.readLock();
+            writeLock();
+        }
+    }
+
+    private void unlockForUpdate(SharedVector other) {
+        if (other.lock != lock) {
+            other.readUnlock();
         }
+        writeUnlock();
     }
 
     public void negate() {
         writeLock();
         for (int i = 0; i < this.length(); i++) {
-            this.vector[i] = -this.vector[i];
+            this.vector.set(i, -this.vector.get(i));
         }
         writeUnlock();
     }
@@ -114,7 +261,7 @@ public class SharedVector {
     public double dot(SharedVector other) {
         //Resource ordering 
         if (other == null) throw new IllegalArgumentException("Other vector cannot be null");
-        if(System.identityHashCode(this) < System.identityHashCode(other)){
+        if(locksBefore(other)){
             readLock();
             other.readLock();
             try{
@@ -128,8 +275,8 @@ public class SharedVector {
 
                 double ret = 0;
                 for(int i = 0; i < length(); i++)
-                    ret+=  get(i) * other.get(i);
-                return ret;
+                    ret = accumulate(ret, get(i) * other.get(i));
+                return round(ret);
             }
             finally{
                 other.readUnlock();
@@ -152,8 +299,8 @@ public class SharedVector {
 
                 double ret = 0;
                 for(int i = 0; i < length(); i++)
-                    ret+=  get(i) * other.get(i);
-                return ret;
+                    ret = accumulate(ret, get(i) * other.get(i));
+                return round(ret);
             }
             finally{
                 readUnlock();
@@ -165,30 +312,49 @@ public class SharedVector {
     }
 
     public void vecMatMul(SharedMatrix matrix) {
+        vecMatMul(matrix, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Same as vecMatMul(matrix), but only entries from..to (inclusive) of this vector take part.
+     * The caller guarantees the other entries are zero, e.g. for a row of a banded or triangular matrix.
+     */
+    public void vecMatMul(SharedMatrix matrix, int from, int to) {
         if (matrix == null) throw new IllegalArgumentException("Matrix cannot be null");
-        writeLock();
-        double[][] m = matrix.readRowMajor();
-        if (m == null || m.length == 0) {
-            this.vector = new double[0];
-            return; 
-        }
+        vecMatMul(matrix.readRowMajor(), from, to);
+    }
 
-        if (this.length() != m.length) {
-            throw new IllegalArgumentException("Dimensions mismatch");
-        }
+    /**
+     * Same as vecMatMul(matrix, from, to) on values already read from the matrix, so the rows of
+     * one product can share a single copy of the right operand instead of each reading their own.
+     */
+    public void vecMatMul(double[][] m, int from, int to) {
+        if (m == null) throw new IllegalArgumentException("Matrix cannot be null");
+        writeLock();
         try{
-            if(length() != m.length) throw new IllegalArgumentException("Vectors length and the number of matrix rows must be of the same to multiplication.");
-            if (m.length == 0) throw new IllegalArgumentException("Matrix has no rows.");
+            if (m.length == 0) {
+                this.vector.release();
+                this.vector = VectorStorage.allocate(0, format.getStorageMode(), format.getPrecision());
+                return;
+            }
+            if(vector.length() != m.length) throw new IllegalArgumentException("Vectors length and the number of matrix rows must be of the same to multiplication.");
             if(orientation != VectorOrientation.ROW_MAJOR) throw new IllegalArgumentException("Vector must be ROW_MAJOR for vector-matrix multiplication.");
 
-            int row = length();
+            int first = Math.max(0, from);
+            int last = Math.min(vector.length() - 1, to);
             int column = m[0].length;
-            double[] temp = new double[column];
-            for(int i = 0; i < column; i++){
-                for(int j = 0; j < row ; j++){
-                    temp[i] += get(j) *m[j][i];
+            double[] sums = new double[column];
+            // walk the matrix row by row; every sum still adds its terms in increasing j
+            for(int j = first; j <= last; j++){
+                double value = vector.get(j);
+                double[] matrixRow = m[j];
+                for(int i = 0; i < column; i++){
+                    sums[i] = accumulate(sums[i], value * matrixRow[i]);
                 }
             }
+            // heap FLOAT64 storage takes the sums array over, every other format copies it
+            VectorStorage temp = VectorStorage.copyOf(sums, format.getStorageMode(), format.getPrecision());
+            this.vector.release();
             this.vector = temp;
             this.orientation = VectorOrientation.ROW_MAJOR;
         }
@@ -197,4 +363,50 @@ public class SharedVector {
             writeUnlock();
         }
     }
+
+    /**
+     * Multiplies every entry by the same factor (a row of a diagonal matrix product).
+     */
+    public void scale(double factor) {
+        writeLock();
+        try{
+            for (int i = 0; i < vector.length(); i++) {
+                vector.set(i, vector.get(i) * factor);
+            }
+        }
+
+        finally{
+            writeUnlock();
+        }
+    }
+
+    /**
+     * Multiplies entry i by factors[i] (a row times a diagonal matrix).
+     */
+    public void scale(double[] factors) {
+        if (factors == null) throw new IllegalArgumentException("factors cannot be null");
+        writeLock();
+        try{
+            if (factors.length != vector.length()) throw new IllegalArgumentException("Vector and factors must be of the same length to scale.");
+            for (int i = 0; i < vector.length(); i++) {
+                vector.set(i, vector.get(i) * factors[i]);
+            }
+        }
+
+        finally{
+            writeUnlock();
+        }
+    }
+
+    // Adds one product to a running sum, rounding both to float when the format accumulates natively in FLOAT32
+    private double accumulate(double sum, double product) {
+        if (!format.roundsPartialSums()) {
+            return sum + product;
+        }
+        return (float) (sum + (float) product);
+    }
+
+    private double round(double value) {
+        return format.getPrecision() == Precision.FLOAT32 ? (float) value : value;
+    }
 }
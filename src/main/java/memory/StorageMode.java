@@ -0,0 +1,14 @@
+package memory;
+/**
+ * Where the values of a SharedVector live.
+ * HEAP vectors are backed by a regular double[] (the caller's array is used as-is).
+ * OFF_HEAP vectors are backed by an aligned direct buffer outside the Java heap,
+ * so large matrices do not add to heap size or GC work.
+ * MAPPED vectors are backed by a memory-mapped temp file, so the OS can write their pages
+ * back to disk under memory pressure and read them in again on access.
+ */
+public enum StorageMode {
+    HEAP,
+    OFF_HEAP,
+    MAPPED
+}
@@ -0,0 +1,63 @@
+package memory;
+
+/**
+ * Storage settings shared by all vectors of a SharedMatrix: where the values live,
+ * their element type and how FLOAT32 sums are accumulated. Immutable.
+ */
+public final class VectorFormat {
+
+    public static final VectorFormat DEFAULT = new VectorFormat(StorageMode.HEAP, Precision.FLOAT64, Accumulation.DOUBLE);
+
+    private final StorageMode storageMode;
+    private final Precision precision;
+    private final Accumulation accumulation;
+
+    private VectorFormat(StorageMode storageMode, Precision precision, Accumulation accumulation) {
+        if (storageMode == null || precision == null || accumulation == null) {
+            throw new IllegalArgumentException("format settings cannot be null");
+        }
+        this.storageMode = storageMode;
+        this.precision = precision;
+        this.accumulation = accumulation;
+    }
+
+    public static VectorFormat of(StorageMode storageMode) {
+        return new VectorFormat(storageMode, Precision.FLOAT64, Accumulation.DOUBLE);
+    }
+
+    public static VectorFormat of(StorageMode storageMode, Precision precision, Accumulation accumulation) {
+        return new VectorFormat(storageMode, precision, accumulation);
+    }
+
+    public VectorFormat withPrecision(Precision precision) {
+        return new VectorFormat(storageMode, precision, accumulation);
+    }
+
+    public VectorFormat withStorageMode(StorageMode storageMode) {
+        return new VectorFormat(storageMode, precision, accumulation);
+    }
+
+    public StorageMode getStorageMode() {
+        return storageMode;
+    }
+
+    public Precision getPrecision() {
+        return precision;
+    }
+
+    public Accumulation getAccumulation() {
+        return accumulation;
+    }
+
+    /**
+     * True when every partial sum must be rounded to float, i.e. FLOAT32 with NATIVE accumulation.
+     */
+    boolean roundsPartialSums() {
+        return precision == Precision.FLOAT32 && accumulation == Accumulation.NATIVE;
+    }
+
+    @Override
+    public String toString() {
+        return storageMode + "/" + precision + "/" + accumulation;
+    }
+}
@@ -0,0 +1,250 @@
+package memory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The values behind a SharedVector.
+ * Heap FLOAT64 storage wraps the given array without copying it, every other format copies the values.
+ * Off-heap storage lives in a direct buffer whose first element sits on an ALIGNMENT byte boundary.
+ * Mapped storage lives in a region of a temp file that is unlinked once mapped, so the file's
+ * space is returned when the mapping is collected.
+ * Not thread safe on its own - SharedVector guards every access with its lock.
+ */
+abstract class VectorStorage {
+
+    static final int ALIGNMENT = 64; // one cache line, and wide enough for any SIMD register
+
+    private final StorageMode mode;
+
+    private VectorStorage(StorageMode mode) {
+        this.mode = mode;
+    }
+
+    static VectorStorage wrap(double[] values) {
+        return new DoubleStorage(DoubleBuffer.wrap(values), StorageMode.HEAP);
+    }
+
+    static VectorStorage allocate(int length, StorageMode mode, Precision precision) {
+        if (mode == StorageMode.MAPPED) {
+            try {
+                return mapFile(new int[] {length}, precision, Path.of(System.getProperty("java.io.tmpdir")))[0];
+            }
+            catch (IOException e) {
+                throw new IllegalStateException("cannot map a temp file for vector storage", e);
+            }
+        }
+        if (precision == Precision.FLOAT32) {
+            if (mode == StorageMode.HEAP) {
+                return new FloatStorage(FloatBuffer.wrap(new float[length]), mode);
+            }
+            return new FloatStorage(alignedDirect(length * Float.BYTES).asFloatBuffer(), mode);
+        }
+        if (mode == StorageMode.HEAP) {
+            return wrap(new double[length]);
+        }
+        return new DoubleStorage(alignedDirect(length * Double.BYTES).asDoubleBuffer(), mode);
+    }
+
+    static VectorStorage copyOf(double[] values, StorageMode mode, Precision precision) {
+        if (mode == StorageMode.HEAP && precision == Precision.FLOAT64) {
+            return wrap(values);
+        }
+        VectorStorage storage = allocate(values.length, mode, precision);
+        for (int i = 0; i < values.length; i++) {
+            storage.set(i, values[i]);
+        }
+        return storage;
+    }
+
+    static final long MAX_REGION_BYTES = Integer.MAX_VALUE; // the most one FileChannel.map call can map
+
+    /**
+     * Mapped storage for vectors of the given lengths, all in one temp file created in directory.
+     * The file is mapped in as few regions as possible, each holding whole vectors, and every
+     * vector gets a slice of its region: one mapping per vector would cost a page of address
+     * space each and run into the OS limit on mappings per process.
+     */
+    static VectorStorage[] mapFile(int[] lengths, Precision precision, Path directory) throws IOException {
+        int elementBytes = precision == Precision.FLOAT32 ? Float.BYTES : Double.BYTES;
+        VectorStorage[] storages = new VectorStorage[lengths.length];
+        Path file = Files.createTempFile(directory, "lae-spill", ".bin");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long fileOffset = 0;
+            int first = 0;
+            while (first < lengths.length) {
+                // the vectors first..last-1 share one region
+                int last = first;
+                long regionBytes = 0;
+                while (last < lengths.length && regionBytes + (long) lengths[last] * elementBytes <= MAX_REGION_BYTES) {
+                    regionBytes += (long) lengths[last] * elementBytes;
+                    last++;
+                }
+                if (last == first) throw new IllegalArgumentException("vector " + first + " is too long to map");
+                ByteBuffer region = channel.map(FileChannel.MapMode.READ_WRITE, fileOffset, regionBytes);
+                int offset = 0;
+                for (int i = first; i < last; i++) {
+                    int bytes = lengths[i] * elementBytes;
+                    ByteBuffer slice = region.slice(offset, bytes).order(ByteOrder.nativeOrder());
+                    offset += bytes;
+                    storages[i] = precision == Precision.FLOAT32
+                            ? new FloatStorage(slice.asFloatBuffer(), StorageMode.MAPPED)
+                            : new DoubleStorage(slice.asDoubleBuffer(), StorageMode.MAPPED);
+                }
+                fileOffset += regionBytes;
+                first = last;
+            }
+        }
+        finally {
+            // the mappings outlive the name; where a mapped file cannot be deleted, it goes at exit
+            try {
+                Files.delete(file);
+            }
+            catch (IOException e) {
+                file.toFile().deleteOnExit();
+            }
+        }
+        return storages;
+    }
+
+    private static ByteBuffer alignedDirect(int bytes) {
+        // allocateDirect only guarantees 8 byte alignment, and alignedSlice trims both ends
+        // to the boundary, so round the size up and add one extra line to slide into
+        int rounded = (bytes + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+        ByteBuffer raw = ByteBuffer.allocateDirect(rounded + ALIGNMENT);
+        ByteBuffer aligned = raw.alignedSlice(ALIGNMENT).order(ByteOrder.nativeOrder());
+        aligned.limit(bytes);
+        return aligned;
+    }
+
+    StorageMode mode() {
+        return mode;
+    }
+
+    abstract Precision precision();
+
+    abstract int length();
+
+    abstract double get(int index);
+
+    /**
+     * Stores the value, rounding it to the storage's element type.
+     */
+    abstract void set(int index, double value);
+
+    void copyTo(int from, double[] dest, int destFrom, int count) {
+        for (int i = 0; i < count; i++) {
+            dest[destFrom + i] = get(from + i);
+        }
+    }
+
+    /**
+     * Drops the reference to the backing buffer. A released off-heap buffer is returned
+     * to the OS as soon as the collector notices it is unreachable.
+     */
+    abstract void release();
+
+    abstract boolean isReleased();
+
+    private static final class DoubleStorage extends VectorStorage {
+
+        private DoubleBuffer data; // null once released
+
+        DoubleStorage(DoubleBuffer data, StorageMode mode) {
+            super(mode);
+            this.data = data;
+        }
+
+        @Override
+        Precision precision() {
+            return Precision.FLOAT64;
+        }
+
+        @Override
+        int length() {
+            return buffer().limit();
+        }
+
+        @Override
+        double get(int index) {
+            return buffer().get(index);
+        }
+
+        @Override
+        void set(int index, double value) {
+            buffer().put(index, value);
+        }
+
+        @Override
+        void copyTo(int from, double[] dest, int destFrom, int count) {
+            buffer().get(from, dest, destFrom, count);
+        }
+
+        @Override
+        void release() {
+            data = null;
+        }
+
+        @Override
+        boolean isReleased() {
+            return data == null;
+        }
+
+        private DoubleBuffer buffer() {
+            if (data == null) throw new IllegalStateException("vector storage was released");
+            return data;
+        }
+    }
+
+    private static final class FloatStorage extends VectorStorage {
+
+        private FloatBuffer data; // null once released
+
+        FloatStorage(FloatBuffer data, StorageMode mode) {
+            super(mode);
+            this.data = data;
+        }
+
+        @Override
+        Precision precision() {
+            return Precision.FLOAT32;
+        }
+
+        @Override
+        int length() {
+            return buffer().limit();
+        }
+
+        @Override
+        double get(int index) {
+            return buffer().get(index);
+        }
+
+        @Override
+        void set(int index, double value) {
+            buffer().put(index, (float) value);
+        }
+
+        @Override
+        void release() {
+            data = null;
+        }
+
+        @Override
+        boolean isReleased() {
+            return data == null;
+        }
+
+        private FloatBuffer buffer() {
+            if (data == null) throw new IllegalStateException("vector storage was released");
+            return data;
+        }
+    }
+}
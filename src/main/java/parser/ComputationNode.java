@@ -1,12 +1,27 @@
 package parser;
 
+import java.util.ArrayList;
 import java.util.List;
 
+import memory.BitMatrix;
+import memory.MatrixStructure;
+import memory.Precision;
+import memory.SharedMatrix;
+import memory.VectorOrientation;
+
 public class ComputationNode {
 
     private ComputationNodeType nodeType;
     private List<ComputationNode> children = null;
     private double[][] matrix = null; // only used for MATRIX nodes
+    private SharedMatrix storedMatrix = null; // MATRIX nodes whose values are kept in a SharedMatrix instead
+    private Precision precision = Precision.FLOAT64; // precision the values were computed or tagged with
+    private BitMatrix bitMatrix = null; // MATRIX nodes whose entries are all 0 or 1 keep them packed
+    private boolean booleanSemiring = false; // MULTIPLY nodes: OR/AND instead of +/*
+    private MatrixStructure structure = null; // MATRIX nodes: known zero pattern, analyzed on first use
+    private int exponent = 1; // POWER nodes only
+    private double alpha = 1.0; // MULTIPLY_ADD nodes only
+    private double beta = 1.0;  // MULTIPLY_ADD nodes only
 
     public ComputationNode(String operatorStr, List<ComputationNode> children) throws IllegalArgumentException {
         this.nodeType = mapOperator(operatorStr);
@@ -23,6 +38,8 @@ public class ComputationNode {
                 return ComputationNodeType.NEGATE;
             case "T":
                 return ComputationNodeType.TRANSPOSE;
+            case "^":
+                return ComputationNodeType.POWER;
             default:
                 throw new IllegalArgumentException("Unknown operator: " + operatorStr);
         }
@@ -38,6 +55,11 @@ public class ComputationNode {
         this.matrix = matrix;
     }
 
+    public ComputationNode(BitMatrix bitMatrix) {
+        this.nodeType = ComputationNodeType.MATRIX;
+        this.bitMatrix = bitMatrix;
+    }
+
     public ComputationNodeType getNodeType() {
         return nodeType;
     }
@@ -46,6 +68,112 @@ public class ComputationNode {
         return children;
     }
 
+    public int getExponent() {
+        return exponent;
+    }
+
+    public void setExponent(int exponent) {
+        if (exponent < 0) throw new IllegalArgumentException("exponent cannot be negative");
+        this.exponent = exponent;
+    }
+
+    public double getAlpha() {
+        return alpha;
+    }
+
+    public double getBeta() {
+        return beta;
+    }
+
+    public boolean isBooleanSemiring() {
+        return booleanSemiring;
+    }
+
+    public void setBooleanSemiring(boolean booleanSemiring) {
+        this.booleanSemiring = booleanSemiring;
+    }
+
+    /**
+     * Returns the zero pattern of a MATRIX node, scanning the values the first time it is needed.
+     */
+    public MatrixStructure getStructure() {
+        if (nodeType != ComputationNodeType.MATRIX) {
+            throw new IllegalStateException("Only MATRIX nodes have a structure.");
+        }
+        if (structure == null) {
+            structure = bitMatrix != null ? MatrixStructure.analyze(bitMatrix) : MatrixStructure.analyze(getMatrix());
+        }
+        return structure;
+    }
+
+    public boolean hasKnownStructure() {
+        return structure != null;
+    }
+
+    /**
+     * Tags the node with a structure derived without scanning (e.g. the negation of a diagonal matrix).
+     */
+    public void setStructure(MatrixStructure structure) {
+        this.structure = structure;
+    }
+
+    public Precision getPrecision() {
+        return precision;
+    }
+
+    public void setPrecision(Precision precision) {
+        this.precision = precision;
+    }
+
+    /**
+     * Returns an independent copy of this subtree, so the copy can be resolved
+     * without touching the original. Leaf matrices are copied as well.
+     */
+    public ComputationNode deepCopy() {
+        ComputationNode copy;
+        if (bitMatrix != null) {
+            copy = new ComputationNode(bitMatrix); // immutable, safe to share
+        }
+        else if (nodeType == ComputationNodeType.MATRIX) {
+            double[][] values = getMatrix();
+            double[][] copied = new double[values.length][];
+            for (int i = 0; i < values.length; i++) {
+                copied[i] = values[i].clone();
+            }
+            copy = new ComputationNode(copied);
+        }
+        else {
+            List<ComputationNode> copiedChildren = new ArrayList<>();
+            for (ComputationNode child : children) {
+                copiedChildren.add(child.deepCopy());
+            }
+            copy = new ComputationNode(nodeType, copiedChildren);
+        }
+        copy.precision = precision;
+        copy.booleanSemiring = booleanSemiring;
+        copy.structure = structure;
+        copy.exponent = exponent;
+        copy.alpha = alpha;
+        copy.beta = beta;
+        return copy;
+    }
+
+    /**
+     * A new operation node with this node's operator and parameters (exponent, semiring,
+     * alpha and beta) applied to the given operands.
+     */
+    public ComputationNode withOperands(List<ComputationNode> operands) {
+        if (nodeType == ComputationNodeType.MATRIX) {
+            throw new IllegalStateException("A MATRIX node has no operator");
+        }
+        ComputationNode node = new ComputationNode(nodeType, new ArrayList<>(operands));
+        node.booleanSemiring = booleanSemiring;
+        node.exponent = exponent;
+        node.alpha = alpha;
+        node.beta = beta;
+        return node;
+    }
+
     /**
      * Recursively finds the first resolvable node in the tree.
      * A resolvable node is defined as a node that is not of type MATRIX,
@@ -73,14 +201,54 @@ public class ComputationNode {
      * Effectively, this converts n-ary operations (n > 2) into binary operations.
      */
     public void associativeNesting() {
-        if (children != null && children.size() > 2) {
+        if (nodeType != ComputationNodeType.MULTIPLY_ADD && children != null && children.size() > 2) {
             ComputationNode lastChild = children.remove(children.size() - 1);
             ComputationNode newNode = new ComputationNode(nodeType, children);
+            newNode.booleanSemiring = booleanSemiring;
             children = List.of(newNode, lastChild);
             newNode.associativeNesting();
         }
     }
 
+    /**
+     * Rewrites every A * B + C in the tree (in either operand order) into one MULTIPLY_ADD node
+     * with children A, B, C, so the product is added into C while it is computed.
+     * A negated product, -(A * B) + C, becomes alpha = -1.
+     * Nests n-ary operations on the way down, since only binary nodes can be matched.
+     */
+    public void fuseMultiplyAdd() {
+        if (nodeType == ComputationNodeType.MATRIX) {
+            return;
+        }
+        associativeNesting();
+        for (ComputationNode child : children) {
+            child.fuseMultiplyAdd();
+        }
+        if (nodeType != ComputationNodeType.ADD) {
+            return;
+        }
+        for (int side = 0; side < 2; side++) {
+            ComputationNode product = children.get(side);
+            ComputationNode addend = children.get(1 - side);
+            double sign = 1.0;
+            if (product.nodeType == ComputationNodeType.NEGATE && isPlainProduct(product.children.get(0))) {
+                product = product.children.get(0);
+                sign = -1.0;
+            }
+            if (isPlainProduct(product)) {
+                nodeType = ComputationNodeType.MULTIPLY_ADD;
+                children = new ArrayList<>(List.of(product.children.get(0), product.children.get(1), addend));
+                alpha = sign;
+                beta = 1.0;
+                return;
+            }
+        }
+    }
+
+    private static boolean isPlainProduct(ComputationNode node) {
+        return node.nodeType == ComputationNodeType.MULTIPLY && !node.booleanSemiring && node.children.size() == 2;
+    }
+
     /**
      * Resolves this node by setting its type to MATRIX and storing the computed matrix.
      */
@@ -88,13 +256,94 @@ public class ComputationNode {
         this.nodeType = ComputationNodeType.MATRIX;
         this.children = null;
         this.matrix = matrix;
+        this.structure = null;
+    }
+
+    /**
+     * Resolves this node with a packed 0/1 matrix.
+     */
+    public void resolve(BitMatrix matrix) {
+        this.nodeType = ComputationNodeType.MATRIX;
+        this.children = null;
+        this.matrix = null;
+        this.storedMatrix = null;
+        this.bitMatrix = matrix;
+        this.structure = null;
+    }
+
+    /**
+     * Resolves this node with a matrix that stays inside the given SharedMatrix
+     * (for example off-heap) until someone asks for it through getMatrix().
+     */
+    public void resolve(SharedMatrix matrix) {
+        this.nodeType = ComputationNodeType.MATRIX;
+        this.children = null;
+        this.matrix = null;
+        this.bitMatrix = null;
+        this.storedMatrix = matrix;
+        this.structure = null;
     }
 
     public double[][] getMatrix() {
-        if (matrix == null) {
-            throw new IllegalStateException("This node does not contain a matrix.");
+        if (matrix != null) {
+            return matrix;
+        }
+        if (storedMatrix != null) {
+            return storedMatrix.readRowMajor(); // fresh copy on every call
+        }
+        if (bitMatrix != null) {
+            return bitMatrix.toDense(); // fresh copy on every call
+        }
+        throw new IllegalStateException("This node does not contain a matrix.");
+    }
+
+    /**
+     * Returns the SharedMatrix holding this node's values, or null if they are kept as a plain array.
+     */
+    public SharedMatrix getStoredMatrix() {
+        return storedMatrix;
+    }
+
+    /**
+     * Number of rows of a MATRIX node, read without copying its values.
+     */
+    public int getRowCount() {
+        if (bitMatrix != null) return bitMatrix.rows();
+        if (storedMatrix != null) {
+            if (storedMatrix.length() == 0) return 0;
+            return storedMatrix.getOrientation() == VectorOrientation.ROW_MAJOR ? storedMatrix.length() : storedMatrix.get(0).length();
+        }
+        return getMatrix().length;
+    }
+
+    /**
+     * Number of columns of a MATRIX node, read without copying its values.
+     */
+    public int getColumnCount() {
+        if (bitMatrix != null) return bitMatrix.cols();
+        if (storedMatrix != null) {
+            if (storedMatrix.length() == 0) return 0;
+            return storedMatrix.getOrientation() == VectorOrientation.ROW_MAJOR ? storedMatrix.get(0).length() : storedMatrix.length();
+        }
+        double[][] values = getMatrix();
+        return values.length == 0 ? 0 : values[0].length;
+    }
+
+    /**
+     * Returns the packed values of a 0/1 MATRIX node, or null if the node is not bit-packed.
+     */
+    public BitMatrix getBitMatrix() {
+        return bitMatrix;
+    }
+
+    /**
+     * Frees the stored matrix of a node that is no longer needed.
+     */
+    public void release() {
+        if (storedMatrix != null) {
+            storedMatrix.release();
+            storedMatrix = null;
         }
-        return matrix;
     }
 
 
@@ -9,5 +9,7 @@ public enum ComputationNodeType {
     MULTIPLY,
     NEGATE,
     TRANSPOSE,
+    POWER,
+    MULTIPLY_ADD, // alpha * A * B + beta * C, only created by ComputationNode.fuseMultiplyAdd
     MATRIX,
 }
\ No newline at end of file
@@ -9,6 +9,9 @@ import java.io.IOException;
 import java.text.ParseException;
 import java.util.*;
 
+import memory.BitMatrix;
+import memory.Precision;
+
 public class InputParser {
 
     private final ObjectMapper mapper = new ObjectMapper();
@@ -24,6 +27,21 @@ public class InputParser {
         }
     }
 
+    /**
+     * Parses an expression given as JSON text rather than as a file path.
+     */
+    public ComputationNode parseJson(String json) throws ParseException {
+        try {
+            JsonNode rootJsonNode = mapper.readTree(json);
+            if (rootJsonNode == null || rootJsonNode.isMissingNode()) {
+                throw new ParseException("Empty JSON input", 0);
+            }
+            return parseJsonNode(rootJsonNode);
+        } catch (IOException e) {
+            throw new ParseException("Failed to read the input JSON: " + e.getMessage(), 0);
+        }
+    }
+
     private ComputationNode parseJsonNode(JsonNode jsonNode) throws ParseException {
         if (jsonNode.has("operator") && jsonNode.has("operands")) {
             String operatorStr = jsonNode.get("operator").asText();
@@ -32,7 +50,36 @@ public class InputParser {
             for (int i = 0; i < operandJsonNodes.size(); i++) {
                 operands.add(parseJsonNode(operandJsonNodes.get(i)));
             }
-            return new ComputationNode(operatorStr, operands);
+            ComputationNode node = new ComputationNode(operatorStr, operands);
+            if (jsonNode.has("semiring")) {
+                String semiring = jsonNode.get("semiring").asText();
+                if (!semiring.equals("boolean") || node.getNodeType() != ComputationNodeType.MULTIPLY) {
+                    throw new ParseException("Only \"*\" supports a semiring, and only \"boolean\": " + jsonNode.toString(), 0);
+                }
+                node.setBooleanSemiring(true);
+            }
+            if (node.getNodeType() == ComputationNodeType.POWER) {
+                JsonNode exponent = jsonNode.get("exponent");
+                if (exponent == null || !exponent.canConvertToInt() || !exponent.isIntegralNumber() || exponent.asInt() < 0) {
+                    throw new ParseException("\"^\" needs a non-negative integer \"exponent\": " + jsonNode.toString(), 0);
+                }
+                if (operands.size() != 1) {
+                    throw new ParseException("\"^\" takes exactly one operand: " + jsonNode.toString(), 0);
+                }
+                node.setExponent(exponent.asInt());
+            }
+            return node;
+        }
+        // A leaf with options: {"precision": "float32", "matrix": [[...], ...]}
+        else if (jsonNode.has("matrix")) {
+            ComputationNode leaf = parseJsonNode(jsonNode.get("matrix"));
+            if (leaf.getNodeType() != ComputationNodeType.MATRIX) {
+                throw new ParseException("\"matrix\" must hold a 2D array: " + jsonNode.toString(), 0);
+            }
+            if (jsonNode.has("precision")) {
+                leaf.setPrecision(parsePrecision(jsonNode.get("precision").asText()));
+            }
+            return leaf;
         }
         else if (jsonNode.isArray()) {
             if (jsonNode.size() == 0) {
@@ -59,10 +106,25 @@ public class InputParser {
                         matrix[i][j] = rowJsonNode.get(j).asDouble();
                     }
                 }
+                // 0/1 matrices (adjacency matrices) are kept bit-packed
+                if (BitMatrix.isBinary(matrix)) {
+                    return new ComputationNode(BitMatrix.fromDense(matrix));
+                }
                 return new ComputationNode(matrix);
             }
         }
         else { throw new ParseException("Invalid node structure: " + jsonNode.toString(), 0); }
     }
 
+    public static Precision parsePrecision(String precisionStr) throws ParseException {
+        switch (precisionStr.toLowerCase()) {
+            case "float32":
+                return Precision.FLOAT32;
+            case "float64":
+                return Precision.FLOAT64;
+            default:
+                throw new ParseException("Unknown precision: " + precisionStr, 0);
+        }
+    }
+
 }
\ No newline at end of file
@@ -31,4 +31,12 @@ public class OutputWriter {
         mapper.writerWithDefaultPrettyPrinter().writeValue(file, new ErrorMessage(error));
     }
 
+    public static String toJson(double[][] matrix) throws IOException {
+        return mapper.writerWithDefaultPrettyPrinter().writeValueAsString(new ResultMatrix(matrix));
+    }
+
+    public static String toJson(String error) throws IOException {
+        return mapper.writerWithDefaultPrettyPrinter().writeValueAsString(new ErrorMessage(error));
+    }
+
 }
@@ -0,0 +1,106 @@
+package scheduling;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Completion and failure state of one group of tasks submitted together.
+ * The first failure is kept, the threads running tasks of the batch are interrupted, and tasks
+ * that have not started are skipped; the batch completes once every task has finished or been
+ * skipped, exceptionally with that first failure.
+ */
+final class Batch {
+
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+    private final Tenant tenant; // whose queue the batch's pending tasks wait in
+    private final Set<Thread> running = new HashSet<>();
+    private final Set<Thread> interrupted = new HashSet<>(); // running threads this batch has interrupted
+    private int remaining;
+    private Throwable failure = null;
+
+    Batch(int size, Tenant tenant) {
+        this.remaining = size;
+        this.tenant = tenant;
+        if (size == 0) done.complete(null);
+    }
+
+    Tenant tenant() {
+        return tenant;
+    }
+
+    CompletableFuture<Void> done() {
+        return done;
+    }
+
+    synchronized boolean isFailed() {
+        return failure != null;
+    }
+
+    /**
+     * Registers the calling thread as running a task of this batch.
+     * False if the batch already failed, in which case the task must be skipped.
+     */
+    synchronized boolean start() {
+        if (failure != null) return false;
+        running.add(Thread.currentThread());
+        return true;
+    }
+
+    /**
+     * Called by the thread that ran (or skipped) a task, with whatever it threw, Errors included, or null.
+     * Returns true if this was the batch's first failure, so the caller cancels its pending tasks.
+     */
+    boolean finish(Throwable taskFailure) {
+        boolean first = false;
+        boolean complete;
+        synchronized (this) {
+            running.remove(Thread.currentThread());
+            // no interrupt can arrive once unregistered, so a cleared flag cannot leak into the next task;
+            // only the batch's own interrupt is cleared, a submitter running a task keeps its own
+            if (interrupted.remove(Thread.currentThread())) Thread.interrupted();
+            if (taskFailure != null) first = fail(taskFailure);
+            complete = --remaining == 0;
+        }
+        if (complete) settle();
+        return first;
+    }
+
+    /**
+     * Fails the batch from outside, e.g. when its waiter gives up, interrupting its running tasks.
+     * Returns true if the batch had not failed yet, so the caller cancels its pending tasks.
+     */
+    synchronized boolean cancel(Throwable reason) {
+        return fail(reason);
+    }
+
+    // Caller holds the lock
+    private boolean fail(Throwable reason) {
+        if (failure != null) return false;
+        failure = reason;
+        for (Thread t : running) {
+            interrupted.add(t);
+            t.interrupt();
+        }
+        return true;
+    }
+
+    /** A task removed from the pending queue without ever running. */
+    void skipped() {
+        boolean complete;
+        synchronized (this) {
+            complete = --remaining == 0;
+        }
+        if (complete) settle();
+    }
+
+    // completes outside the lock: dependents of done run synchronously
+    private void settle() {
+        Throwable f;
+        synchronized (this) {
+            f = failure;
+        }
+        if (f == null) done.complete(null);
+        else done.completeExceptionally(f);
+    }
+}
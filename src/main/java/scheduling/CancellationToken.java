@@ -0,0 +1,57 @@
+package scheduling;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Cooperative cancellation for one computation: cancelled explicitly, or once its deadline passes.
+ * Nothing is stopped from the outside; tasks call throwIfCancelled() at task and chunk boundaries,
+ * and long kernels also every row or tile, and the failing task stops the rest of its batch like
+ * any other task failure.
+ */
+public final class CancellationToken {
+
+    private static final CancellationToken NONE = new CancellationToken(0, false);
+
+    private final long deadlineNanos; // System.nanoTime() deadline, meaningful only if hasDeadline
+    private final boolean hasDeadline;
+    private final long timeoutMillis;
+    private volatile boolean cancelled = false;
+
+    private CancellationToken(long timeoutMillis, boolean hasDeadline) {
+        this.timeoutMillis = timeoutMillis;
+        this.hasDeadline = hasDeadline;
+        this.deadlineNanos = hasDeadline ? System.nanoTime() + timeoutMillis * 1_000_000L : 0;
+    }
+
+    /** A token that is never cancelled. cancel() is not allowed on it. */
+    public static CancellationToken none() {
+        return NONE;
+    }
+
+    /** A token without deadline, cancelled only by cancel(). */
+    public static CancellationToken manual() {
+        return new CancellationToken(0, false);
+    }
+
+    /** A token that expires timeoutMillis from now. */
+    public static CancellationToken withTimeout(long timeoutMillis) {
+        if (timeoutMillis < 1) throw new IllegalArgumentException("timeoutMillis must be positive");
+        return new CancellationToken(timeoutMillis, true);
+    }
+
+    public void cancel() {
+        if (this == NONE) throw new IllegalStateException("the shared token cannot be cancelled");
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled || (hasDeadline && System.nanoTime() - deadlineNanos >= 0);
+    }
+
+    public void throwIfCancelled() {
+        if (cancelled) throw new CancellationException("Computation was cancelled");
+        if (hasDeadline && System.nanoTime() - deadlineNanos >= 0) {
+            throw new CancellationException("Computation exceeded its deadline of " + timeoutMillis + " ms");
+        }
+    }
+}
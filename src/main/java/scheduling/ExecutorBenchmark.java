@@ -0,0 +1,81 @@
+package scheduling;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * Compares the thread and handoff modes of TiredExecutor on three workloads: tiny tasks where
+ * the handoff cost dominates, short CPU-bound tasks, and tasks that block for a while the way
+ * parsing and writing block on I/O in server and batch runs.
+ *
+ * Usage: ExecutorBenchmark [workers] [tasks] [block millis] [rounds]
+ */
+public class ExecutorBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        int workers = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int tasks = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int blockMillis = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+        System.out.println("workers=" + workers + " tasks=" + tasks + " blockMillis=" + blockMillis + " rounds=" + rounds);
+        List<ExecutorConfig> configs = List.of(
+                ExecutorConfig.platform(workers),
+                ExecutorConfig.platform(workers).withHandoffMode(HandoffMode.SPIN_PARK),
+                ExecutorConfig.virtual(workers));
+        for (ExecutorConfig config : configs) {
+            String name = config.getThreadMode() == ThreadMode.VIRTUAL ? "VIRTUAL" : "PLATFORM/" + config.getHandoffMode();
+            System.out.printf("%-20s tiny:     %8.2f ms/round%n", name, measure(config, cpuTasks(tasks, 20), rounds));
+            System.out.printf("%-20s cpu:      %8.2f ms/round%n", name, measure(config, cpuTasks(tasks, 2_000), rounds));
+            // Blocking tasks only overlap when there are more workers than cores
+            int blockingWorkers = workers * 16;
+            ExecutorConfig blocking = (config.getThreadMode() == ThreadMode.VIRTUAL ? ExecutorConfig.virtual(blockingWorkers)
+                    : ExecutorConfig.platform(blockingWorkers)).withHandoffMode(config.getHandoffMode());
+            System.out.printf("%-20s blocking: %8.2f ms/round (%d workers)%n", name,
+                    measure(blocking, blockingTasks(tasks / 20, blockMillis), rounds), blockingWorkers);
+        }
+    }
+
+    private static double measure(ExecutorConfig config, List<Runnable> batch, int rounds) throws InterruptedException {
+        TiredExecutor executor = new TiredExecutor(config);
+        try {
+            executor.submitAll(batch); // warmup
+            long start = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                executor.submitAll(batch);
+            }
+            return (System.nanoTime() - start) / 1e6 / rounds;
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    private static List<Runnable> cpuTasks(int count, int work) {
+        DoubleAdder sink = new DoubleAdder();
+        List<Runnable> batch = new ArrayList<>();
+        for (int t = 0; t < count; t++) {
+            batch.add(() -> {
+                double sum = 0;
+                for (int i = 0; i < work; i++) sum += Math.sqrt(i);
+                sink.add(sum);
+            });
+        }
+        return batch;
+    }
+
+    private static List<Runnable> blockingTasks(int count, int blockMillis) {
+        List<Runnable> batch = new ArrayList<>();
+        for (int t = 0; t < count; t++) {
+            batch.add(() -> {
+                try {
+                    Thread.sleep(blockMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        return batch;
+    }
+}
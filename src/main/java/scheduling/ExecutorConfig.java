@@ -0,0 +1,127 @@
+package scheduling;
+
+/**
+ * Settings of a TiredExecutor: how many workers it has and what runs their tasks. Immutable.
+ */
+public final class ExecutorConfig {
+
+    public static final long DEFAULT_KEEP_ALIVE_MILLIS = 1000;
+    public static final int UNBOUNDED_TASKS = Integer.MAX_VALUE;
+    public static final long UNBOUNDED_BYTES = Long.MAX_VALUE;
+
+    private final int numThreads;
+    private final int maxThreads;
+    private final long keepAliveMillis;
+    private final ThreadMode threadMode;
+    private final HandoffMode handoffMode;
+    private final int maxQueuedTasks;
+    private final long maxQueuedBytes;
+    private final OverflowPolicy overflowPolicy;
+
+    private ExecutorConfig(int numThreads, int maxThreads, long keepAliveMillis, ThreadMode threadMode, HandoffMode handoffMode) {
+        this(numThreads, maxThreads, keepAliveMillis, threadMode, handoffMode, UNBOUNDED_TASKS, UNBOUNDED_BYTES, OverflowPolicy.BLOCK);
+    }
+
+    private ExecutorConfig(int numThreads, int maxThreads, long keepAliveMillis, ThreadMode threadMode, HandoffMode handoffMode,
+                           int maxQueuedTasks, long maxQueuedBytes, OverflowPolicy overflowPolicy) {
+        if (numThreads < 1) throw new IllegalArgumentException("numThreads must be positive");
+        if (maxThreads < numThreads) throw new IllegalArgumentException("maxThreads cannot be below numThreads");
+        if (keepAliveMillis < 1) throw new IllegalArgumentException("keepAliveMillis must be positive");
+        if (threadMode == null || handoffMode == null || overflowPolicy == null) throw new IllegalArgumentException("executor settings cannot be null");
+        if (maxQueuedTasks < 1) throw new IllegalArgumentException("maxQueuedTasks must be positive");
+        if (maxQueuedBytes < 1) throw new IllegalArgumentException("maxQueuedBytes must be positive");
+        this.numThreads = numThreads;
+        this.maxThreads = maxThreads;
+        this.keepAliveMillis = keepAliveMillis;
+        this.threadMode = threadMode;
+        this.handoffMode = handoffMode;
+        this.maxQueuedTasks = maxQueuedTasks;
+        this.maxQueuedBytes = maxQueuedBytes;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public static ExecutorConfig platform(int numThreads) {
+        return new ExecutorConfig(numThreads, numThreads, DEFAULT_KEEP_ALIVE_MILLIS, ThreadMode.PLATFORM, HandoffMode.QUEUE);
+    }
+
+    /**
+     * numThreads bounds how many tasks run at once, as in PLATFORM mode; with virtual threads
+     * it can be set well above the core count when tasks block on I/O.
+     */
+    public static ExecutorConfig virtual(int numThreads) {
+        return new ExecutorConfig(numThreads, numThreads, DEFAULT_KEEP_ALIVE_MILLIS, ThreadMode.VIRTUAL, HandoffMode.QUEUE);
+    }
+
+    /**
+     * An elastic pool starts with minThreads workers. It adds one whenever tasks are waiting and
+     * every worker is busy, up to maxThreads, and retires workers idle for keepAliveMillis while
+     * more than minThreads are left.
+     */
+    public static ExecutorConfig elastic(int minThreads, int maxThreads, long keepAliveMillis) {
+        return new ExecutorConfig(minThreads, maxThreads, keepAliveMillis, ThreadMode.PLATFORM, HandoffMode.QUEUE);
+    }
+
+    public ExecutorConfig withThreadMode(ThreadMode threadMode) {
+        return new ExecutorConfig(numThreads, maxThreads, keepAliveMillis, threadMode, handoffMode,
+                maxQueuedTasks, maxQueuedBytes, overflowPolicy);
+    }
+
+    /**
+     * Only affects PLATFORM workers; virtual threads get their task when they are started.
+     */
+    public ExecutorConfig withHandoffMode(HandoffMode handoffMode) {
+        return new ExecutorConfig(numThreads, maxThreads, keepAliveMillis, threadMode, handoffMode,
+                maxQueuedTasks, maxQueuedBytes, overflowPolicy);
+    }
+
+    /**
+     * Bounds the tasks waiting for a worker and the estimated bytes of operands they reference;
+     * once either bound is reached, further submissions are handled by the policy. A submission
+     * is always admitted into an empty queue, so one larger than the bounds still runs.
+     */
+    public ExecutorConfig withQueueBound(int maxQueuedTasks, long maxQueuedBytes, OverflowPolicy overflowPolicy) {
+        return new ExecutorConfig(numThreads, maxThreads, keepAliveMillis, threadMode, handoffMode,
+                maxQueuedTasks, maxQueuedBytes, overflowPolicy);
+    }
+
+    /** Workers at start, and the minimum an elastic pool keeps. */
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    public long getKeepAliveMillis() {
+        return keepAliveMillis;
+    }
+
+    public boolean isElastic() {
+        return maxThreads > numThreads;
+    }
+
+    public ThreadMode getThreadMode() {
+        return threadMode;
+    }
+
+    public HandoffMode getHandoffMode() {
+        return handoffMode;
+    }
+
+    public int getMaxQueuedTasks() {
+        return maxQueuedTasks;
+    }
+
+    public long getMaxQueuedBytes() {
+        return maxQueuedBytes;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public boolean isQueueBounded() {
+        return maxQueuedTasks != UNBOUNDED_TASKS || maxQueuedBytes != UNBOUNDED_BYTES;
+    }
+}
@@ -0,0 +1,100 @@
+package scheduling;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Per-tenant FIFO queues served by deficit round-robin. Not thread-safe: the executor
+ * guards it with its dispatch lock.
+ */
+final class FairTaskQueue<T> {
+
+    private static final class Lane<T> {
+        final Tenant tenant;
+        final ArrayDeque<T> tasks = new ArrayDeque<>();
+        long deficit = 0; // tasks it may still start in the current round
+        boolean turnStarted = false;
+        Lane(Tenant tenant) { this.tenant = tenant; }
+    }
+
+    private final Map<Tenant, Lane<T>> lanes = new HashMap<>();
+    private final ArrayDeque<Lane<T>> ring = new ArrayDeque<>(); // lanes with queued tasks, in service order
+    private int size = 0;
+
+    void add(Tenant tenant, T task) {
+        Lane<T> lane = lanes.computeIfAbsent(tenant, Lane::new);
+        if (lane.tasks.isEmpty()) ring.addLast(lane);
+        lane.tasks.addLast(task);
+        size++;
+    }
+
+    /**
+     * The next task in deficit round-robin order, skipping tenants at their concurrency cap.
+     * Null if nothing is queued or every tenant with queued tasks is at its cap.
+     */
+    T poll() {
+        int capped = 0;
+        while (capped < ring.size()) {
+            Lane<T> lane = ring.peekFirst();
+            if (lane.tenant.atCapacity()) {
+                // a capped tenant does not bank quantum for later bursts
+                lane.turnStarted = false;
+                lane.deficit = Math.min(lane.deficit, lane.tenant.getWeight());
+                ring.addLast(ring.pollFirst());
+                capped++;
+                continue;
+            }
+            if (!lane.turnStarted) {
+                lane.deficit += lane.tenant.getWeight();
+                lane.turnStarted = true;
+            }
+            if (lane.deficit >= 1) {
+                lane.deficit--;
+                size--;
+                T task = lane.tasks.pollFirst();
+                if (lane.tasks.isEmpty()) {
+                    // an empty lane leaves the round and forgets its deficit
+                    ring.pollFirst();
+                    lanes.remove(lane.tenant);
+                }
+                return task;
+            }
+            lane.turnStarted = false;
+            ring.addLast(ring.pollFirst());
+        }
+        return null;
+    }
+
+    /** Removes and returns the tenant's queued tasks that match. */
+    List<T> removeIf(Tenant tenant, Predicate<T> filter) {
+        List<T> removed = new ArrayList<>();
+        Lane<T> lane = lanes.get(tenant);
+        if (lane == null) return removed;
+        for (Iterator<T> it = lane.tasks.iterator(); it.hasNext(); ) {
+            T task = it.next();
+            if (filter.test(task)) {
+                it.remove();
+                removed.add(task);
+            }
+        }
+        size -= removed.size();
+        if (lane.tasks.isEmpty()) {
+            ring.remove(lane);
+            lanes.remove(tenant);
+        }
+        return removed;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+}
@@ -0,0 +1,12 @@
+package scheduling;
+/**
+ * How a platform TiredThread receives its next task.
+ * QUEUE blocks on a one-slot ArrayBlockingQueue, paying a lock and a park/unpark per task.
+ * SPIN_PARK uses a single-producer/single-consumer slot: the idle worker spins for a short
+ * while with Thread.onSpinWait() and only then parks, so back-to-back small tasks are picked
+ * up without a context switch, at the cost of some CPU while idle.
+ */
+public enum HandoffMode {
+    QUEUE,
+    SPIN_PARK
+}
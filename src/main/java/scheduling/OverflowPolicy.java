@@ -0,0 +1,13 @@
+package scheduling;
+/**
+ * What a TiredExecutor does with a submission its bounded queue has no room for.
+ * BLOCK makes the submitter wait, queueing the tasks one by one as room frees up.
+ * CALLER_RUNS queues what fits and runs the rest on the submitting thread, which slows the
+ * producer down to the pace of the workers.
+ * REJECT throws a RejectedExecutionException and queues none of the tasks.
+ */
+public enum OverflowPolicy {
+    BLOCK,
+    CALLER_RUNS,
+    REJECT
+}
@@ -0,0 +1,9 @@
+package scheduling;
+
+/**
+ * Work over a range of indices [from, to), for example a block of matrix rows.
+ */
+@FunctionalInterface
+public interface RangeTask {
+    void run(int from, int to);
+}
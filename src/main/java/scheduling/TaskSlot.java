@@ -0,0 +1,71 @@
+package scheduling;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single-task handoff between the executor and one worker thread.
+ */
+abstract class TaskSlot {
+
+    // Spins before an idle SPIN_PARK worker parks, or before a SPIN_PARK batch wait blocks
+    static final int SPIN_LIMIT = 2_000;
+
+    static TaskSlot create(HandoffMode mode) {
+        return mode == HandoffMode.SPIN_PARK ? new SpinParkSlot() : new QueueSlot();
+    }
+
+    /** Hands a task over without blocking; false if the slot is still full. */
+    abstract boolean offer(Runnable task);
+
+    /** Hands a task over, waiting for the slot to empty. */
+    abstract void put(Runnable task) throws InterruptedException;
+
+    /** Waits for the next task. Only the owning worker calls it. */
+    abstract Runnable take() throws InterruptedException;
+
+    static final class QueueSlot extends TaskSlot {
+        private final BlockingQueue<Runnable> handoff = new ArrayBlockingQueue<>(1);
+
+        boolean offer(Runnable task) { return handoff.offer(task); }
+        void put(Runnable task) throws InterruptedException { handoff.put(task); }
+        Runnable take() throws InterruptedException { return handoff.take(); }
+    }
+
+    static final class SpinParkSlot extends TaskSlot {
+        private final AtomicReference<Runnable> slot = new AtomicReference<>();
+        private volatile Thread waiter = null; // set while the consumer is about to park
+
+        boolean offer(Runnable task) {
+            if (!slot.compareAndSet(null, task)) return false;
+            Thread w = waiter;
+            if (w != null) LockSupport.unpark(w);
+            return true;
+        }
+
+        void put(Runnable task) throws InterruptedException {
+            while (!offer(task)) {
+                if (Thread.interrupted()) throw new InterruptedException();
+                Thread.onSpinWait();
+            }
+        }
+
+        Runnable take() throws InterruptedException {
+            Runnable task;
+            for (int spins = 0; (task = slot.getAndSet(null)) == null; spins++) {
+                if (spins < SPIN_LIMIT) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                waiter = Thread.currentThread();
+                // re-check after publishing waiter: a producer that missed it has filled the slot
+                if (slot.get() == null) LockSupport.park(this);
+                waiter = null;
+                if (Thread.interrupted()) throw new InterruptedException();
+            }
+            return task;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package scheduling;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A party whose tasks are queued separately from everyone else's on a TiredExecutor.
+ * Idle workers are shared between tenants by deficit round-robin: in each round a tenant may
+ * start as many tasks as its weight, so a tenant with weight 2 gets about twice the worker time
+ * of a tenant with weight 1 while both have work queued. maxConcurrent caps how many of its
+ * tasks run at once, whatever the other tenants are doing.
+ *
+ * The engine gives every run its own tenant unless it is handed one, so concurrent computations
+ * are served in turn instead of first come, first served.
+ */
+public final class Tenant {
+
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    private final String name;
+    private final int weight;
+    private final int maxConcurrent;
+
+    private final AtomicInteger running = new AtomicInteger(0);
+    private final AtomicLong tasksRun = new AtomicLong(0);
+    private final AtomicLong queueWaitNanos = new AtomicLong(0);
+    private final AtomicLong cpuNanos = new AtomicLong(0);
+
+    public Tenant(String name, int weight, int maxConcurrent) {
+        if (name == null) throw new IllegalArgumentException("name cannot be null");
+        if (weight < 1) throw new IllegalArgumentException("weight must be positive");
+        if (maxConcurrent < 1) throw new IllegalArgumentException("maxConcurrent must be positive");
+        this.name = name;
+        this.weight = weight;
+        this.maxConcurrent = maxConcurrent;
+    }
+
+    public static Tenant of(String name) {
+        return new Tenant(name, 1, UNLIMITED);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public int getRunning() {
+        return running.get();
+    }
+
+    public long getTasksRun() {
+        return tasksRun.get();
+    }
+
+    /** Total time its tasks spent queued before a worker picked them up. */
+    public long getQueueWaitNanos() {
+        return queueWaitNanos.get();
+    }
+
+    /** Total time workers spent running its tasks. */
+    public long getCpuNanos() {
+        return cpuNanos.get();
+    }
+
+    boolean atCapacity() {
+        return running.get() >= maxConcurrent;
+    }
+
+    void started(long waitNanos) {
+        running.incrementAndGet();
+        queueWaitNanos.addAndGet(waitNanos);
+    }
+
+    void finished(long runNanos) {
+        running.decrementAndGet();
+        tasksRun.incrementAndGet();
+        cpuNanos.addAndGet(runNanos);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Tenant: %s, Weight: %d, Cap: %s, Tasks: %d, Queue Wait: %.3fms, CPU: %.3fms",
+                name, weight, maxConcurrent == UNLIMITED ? "none" : String.valueOf(maxConcurrent),
+                tasksRun.get(), queueWaitNanos.get() / 1e6, cpuNanos.get() / 1e6);
+    }
+}
@@ -0,0 +1,12 @@
+package scheduling;
+/**
+ * What runs the tasks of a TiredExecutor.
+ * PLATFORM workers are long-lived platform threads, each taking tasks from its handoff slot.
+ * VIRTUAL workers are never started: each task runs on a new virtual thread, and the worker only
+ * holds the fatigue and time accounting, so the fatigue order stays the scheduling policy on top
+ * of the JDK's carrier pool.
+ */
+public enum ThreadMode {
+    PLATFORM,
+    VIRTUAL
+}
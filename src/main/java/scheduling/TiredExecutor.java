@@ -1,101 +1,615 @@
 package scheduling;
 
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 public class TiredExecutor {
 
-    private final TiredThread[] workers;
+    private final List<TiredThread> workers = new CopyOnWriteArrayList<>(); // current workers; changes under the pending lock
+    private final List<TiredThread> retired = new ArrayList<>(); // joined on shutdown
+    private final ExecutorConfig config;
+    private final Deque<String> poolDecisions = new ArrayDeque<>(); // latest grow and retire decisions, for the report
+    private int nextWorkerId = 0;
+    private int grown = 0;
+    private Thread reaper = null; // retires idle workers of an elastic pool
+    private final ThreadMode threadMode;
+    private final HandoffMode handoffMode;
     private final PriorityBlockingQueue<TiredThread> idleMinHeap = new PriorityBlockingQueue<>();
-    private final AtomicInteger inFlight = new AtomicInteger(0);
+    private final AtomicInteger inFlight = new AtomicInteger(0); // submitted tasks that have not finished yet
+    private final FairTaskQueue<PendingTask> pending = new FairTaskQueue<>(); // waiting for an idle worker; also guards dispatch
+    private final Tenant defaultTenant = Tenant.of("default"); // for submissions that name no tenant
+    private final List<Tenant> tenants = new CopyOnWriteArrayList<>(); // registered for the report
+    private long queuedBytes = 0; // estimated operand bytes of the pending tasks
+    private long blockedSubmissions = 0; // times a submitter waited for queue space
+    private final AtomicLong callerRan = new AtomicLong(0); // tasks run on the submitting thread
+    private long rejected = 0;
+    private boolean shutdown = false;
+
+    private static final int MAX_POOL_DECISIONS = 20;
+
+    // A worker claims 1/CHUNK_DIVISOR of its share of the remaining work, leaving room to balance the tail
+    private static final int CHUNK_DIVISOR = 2;
+
+    private static class PendingTask {
+        final Consumer<TiredThread> task; // gets the worker running it
+        final CompletableFuture<Void> future;
+        final Batch batch; // null for tasks submitted on their own
+        final Tenant tenant;
+        final long bytes; // estimated operand bytes the task references while queued
+        long enqueuedAt;
+        PendingTask(Consumer<TiredThread> task, CompletableFuture<Void> future, Batch batch, Tenant tenant, long bytes) {
+            this.task = task;
+            this.future = future;
+            this.batch = batch;
+            this.tenant = tenant;
+            this.bytes = bytes;
+        }
+    }
 
     public TiredExecutor(int numThreads) {
-        workers = new TiredThread[numThreads];
-        for(int i = 0; i < numThreads; i++){   
-            workers[i] = new TiredThread(i, Math.random() + 0.5 );
-            workers[i].start(); //while alive the worker will run
-            idleMinHeap.add(workers[i]);
+        this(ExecutorConfig.platform(numThreads));
+    }
+
+    public TiredExecutor(ExecutorConfig config) {
+        this.config = config;
+        this.threadMode = config.getThreadMode();
+        this.handoffMode = config.getHandoffMode();
+        synchronized (pending) {
+            for(int i = 0; i < config.getNumThreads(); i++){
+                addWorker();
+            }
+        }
+        if (config.isElastic()) {
+            reaper = new Thread(this::retireIdleWorkers, "tired-executor-reaper");
+            reaper.setDaemon(true);
+            reaper.start();
         }
     }
 
-    public void submit(Runnable task) {
+    // Caller holds the pending lock
+    private TiredThread addWorker() {
+        TiredThread worker = new TiredThread(nextWorkerId++, Math.random() + 0.5, handoffMode);
+        if (threadMode == ThreadMode.PLATFORM) {
+            worker.start(); //while alive the worker will run
+        }
+        workers.add(worker);
+        idleMinHeap.add(worker);
+        return worker;
+    }
 
-        if (task == null) throw new IllegalArgumentException("task is null");
+    // Caller holds the pending lock
+    private void recordDecision(String decision) {
+        if (poolDecisions.size() == MAX_POOL_DECISIONS) poolDecisions.removeFirst();
+        poolDecisions.addLast(decision);
+    }
+
+    // Runs on the reaper thread of an elastic pool until shutdown
+    private void retireIdleWorkers() {
+        long keepAliveNanos = config.getKeepAliveMillis() * 1_000_000L;
         try {
-            TiredThread worker = idleMinHeap.take();
-            inFlight.incrementAndGet();
-            Runnable wrapped = () -> {
-                long startTime = System.nanoTime();  
-                try {
-                    task.run();
-                } 
-                catch(Exception e) {
-                    System.out.println(e.getMessage());
-                }
-                finally {
-                    long duration = System.nanoTime() - startTime;
-                    worker.addTimeUsed(duration);
-                    idleMinHeap.offer(worker); //adding back to the heap by fatigue (comparable implemented at TiredThread)
-
-                    int left = inFlight.decrementAndGet();
-                    if (left == 0) {
-                        synchronized (inFlight) {
-                            inFlight.notifyAll();
+            while (true) {
+                Thread.sleep(Math.max(1, config.getKeepAliveMillis() / 2));
+                synchronized (pending) {
+                    if (shutdown) return;
+                    long now = System.nanoTime();
+                    for (TiredThread w : idleMinHeap) {
+                        if (workers.size() <= config.getNumThreads()) break;
+                        long idle = now - w.getIdleSince();
+                        // a worker is back in the heap slightly before its idle period starts, hence isBusy
+                        if (!w.isBusy() && idle >= keepAliveNanos && idleMinHeap.remove(w)) {
+                            workers.remove(w);
+                            retired.add(w);
+                            w.shutdown();
+                            recordDecision("retired worker " + w.getWorkerId() + " after " + idle / 1_000_000 + "ms idle, "
+                                    + workers.size() + " left");
                         }
                     }
                 }
-            };
-            
-            worker.newTask(wrapped); 
-            
-        } catch (Exception e) {
+            }
+        }
+        catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
-        
     }
 
+    public ThreadMode getThreadMode() {
+        return threadMode;
+    }
+
+    public HandoffMode getHandoffMode() {
+        return handoffMode;
+    }
+
+    /**
+     * Queues the task and returns right away. The task runs on the least tired idle worker as
+     * soon as one is free; the future completes when it finishes, exceptionally if it threw.
+     */
+    public CompletableFuture<Void> submit(Runnable task) {
+        return submit(task, 0);
+    }
+
+    /**
+     * Like submit, counting estimatedBytes against the queue's byte bound while the task waits.
+     */
+    public CompletableFuture<Void> submit(Runnable task, long estimatedBytes) {
+        if (task == null) throw new IllegalArgumentException("task is null");
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        enqueue(List.of(new PendingTask(worker -> task.run(), future, null, defaultTenant, estimatedBytes)));
+        return future;
+    }
+
+    // Queues the tasks within the configured bounds, applying the overflow policy to what does not fit
+    private void enqueue(List<PendingTask> tasks) {
+        OverflowPolicy policy = config.getOverflowPolicy();
+        List<PendingTask> callerRuns = List.of();
+        synchronized (pending) {
+            if (shutdown) throw new IllegalStateException("executor is shut down");
+            if (policy == OverflowPolicy.REJECT && !fits(tasks.size(), bytesOf(tasks))) {
+                rejected++;
+                throw new RejectedExecutionException("Executor queue is full: " + pending.size() + " tasks, "
+                        + queuedBytes + " bytes waiting");
+            }
+            for (int i = 0; i < tasks.size(); i++) {
+                PendingTask t = tasks.get(i);
+                if (!fits(1, t.bytes)) {
+                    if (policy == OverflowPolicy.CALLER_RUNS) {
+                        callerRuns = tasks.subList(i, tasks.size());
+                        break;
+                    }
+                    dispatch(); // queued tasks may only be waiting for the lock
+                    if (!fits(1, t.bytes)) awaitQueueSpace(tasks.subList(i, tasks.size()));
+                }
+                inFlight.incrementAndGet();
+                queuedBytes += t.bytes;
+                t.enqueuedAt = System.nanoTime();
+                pending.add(t.tenant, t);
+            }
+        }
+        dispatch();
+        for (PendingTask t : callerRuns) {
+            callerRan.incrementAndGet();
+            t.tenant.started(0);
+            runOn(null, t);
+        }
+    }
+
+    // Caller holds the pending lock
+    private boolean fits(int count, long bytes) {
+        if (pending.isEmpty()) return true;
+        return pending.size() + count <= config.getMaxQueuedTasks()
+                && queuedBytes + bytes <= config.getMaxQueuedBytes();
+    }
+
+    private static long bytesOf(List<PendingTask> tasks) {
+        long bytes = 0;
+        for (PendingTask t : tasks) bytes += t.bytes;
+        return bytes;
+    }
+
+    /*
+     * Caller holds the pending lock. Waits until the first of the rest fits; if the wait is cut
+     * short, the rest is skipped so its batch can still complete, and the submission fails.
+     */
+    private void awaitQueueSpace(List<PendingTask> rest) {
+        blockedSubmissions++;
+        PendingTask first = rest.get(0);
+        while (!fits(1, first.bytes) && !shutdown) {
+            try {
+                pending.wait();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                skip(rest);
+                throw new RejectedExecutionException("Interrupted while waiting for queue space");
+            }
+        }
+        if (shutdown) {
+            skip(rest);
+            throw new IllegalStateException("executor is shut down");
+        }
+    }
+
+    private static void skip(List<PendingTask> tasks) {
+        for (PendingTask t : tasks) {
+            if (t.batch != null) t.batch.skipped();
+            t.future.cancel(false);
+        }
+    }
+
+    /**
+     * Submits every task and returns a handle that completes once all of them have finished.
+     * Each batch has its own handle, so batches from different callers do not wait on each other.
+     * The batch fails fast: the first exception skips the tasks that have not started, interrupts
+     * the ones running, and becomes the exceptional result of the handle once they have stopped.
+     */
+    public CompletableFuture<Void> submitBatch(Iterable<Runnable> tasks) {
+        return submitBatch(tasks, defaultTenant);
+    }
+
+    /**
+     * Like submitBatch, queueing the tasks behind the tenant's earlier tasks rather than everyone's.
+     */
+    public CompletableFuture<Void> submitBatch(Iterable<Runnable> tasks, Tenant tenant) {
+        return submitBatch(tasks, tenant, 0);
+    }
+
+    /**
+     * Like submitBatch with a tenant, counting estimatedBytes, spread over the tasks, against the
+     * queue's byte bound while they wait.
+     */
+    public CompletableFuture<Void> submitBatch(Iterable<Runnable> tasks, Tenant tenant, long estimatedBytes) {
+        return enqueueBatch(tasks, tenant, estimatedBytes).done();
+    }
+
+    private Batch enqueueBatch(Iterable<Runnable> tasks, Tenant tenant, long estimatedBytes) {
+        if (tenant == null) throw new IllegalArgumentException("tenant is null");
+        if (estimatedBytes < 0) throw new IllegalArgumentException("estimatedBytes cannot be negative");
+        List<Consumer<TiredThread>> bodies = new ArrayList<>();
+        for (Runnable task : tasks) {
+            if (task == null) throw new IllegalArgumentException("task is null");
+            bodies.add(worker -> task.run());
+        }
+        Batch batch = new Batch(bodies.size(), tenant);
+        enqueue(batch, bodies, tenant, estimatedBytes);
+        return batch;
+    }
+
+    private void enqueue(Batch batch, List<Consumer<TiredThread>> bodies, Tenant tenant, long estimatedBytes) {
+        List<PendingTask> tasks = new ArrayList<>();
+        long each = bodies.isEmpty() ? 0 : estimatedBytes / bodies.size();
+        for (Consumer<TiredThread> body : bodies) {
+            tasks.add(new PendingTask(body, new CompletableFuture<>(), batch, tenant, each));
+        }
+        enqueue(tasks);
+    }
+
+    /**
+     * Runs the tasks and waits for them. The first task to throw stops the batch and its
+     * exception is rethrown here; checked exceptions and Errors come wrapped in an IllegalStateException.
+     */
     public void submitAll(Iterable<Runnable> tasks) {
-        // TODO: submit tasks one by one and wait until all finish
+        awaitOrRethrow(enqueueBatch(tasks, defaultTenant, 0));
+    }
+
+    /**
+     * Like submitAll, but every task first checks the token, so once it is cancelled or past its
+     * deadline the batch stops with a CancellationException at the next task boundary.
+     */
+    public void submitAll(Iterable<Runnable> tasks, CancellationToken token) {
+        submitAll(tasks, token, defaultTenant);
+    }
+
+    /**
+     * Like submitAll with a token, running the tasks as the tenant's.
+     */
+    public void submitAll(Iterable<Runnable> tasks, CancellationToken token, Tenant tenant) {
+        submitAll(tasks, token, tenant, 0);
+    }
+
+    /**
+     * Like submitAll with a token and tenant, counting estimatedBytes against the queue's byte bound.
+     */
+    public void submitAll(Iterable<Runnable> tasks, CancellationToken token, Tenant tenant, long estimatedBytes) {
+        if (token == null || token == CancellationToken.none()) {
+            awaitOrRethrow(enqueueBatch(tasks, tenant, estimatedBytes));
+            return;
+        }
+        List<Runnable> checked = new ArrayList<>();
         for (Runnable task : tasks) {
-            submit(task);
+            if (task == null) throw new IllegalArgumentException("task is null");
+            checked.add(() -> {
+                token.throwIfCancelled();
+                task.run();
+            });
         }
+        awaitOrRethrow(enqueueBatch(checked, tenant, estimatedBytes));
+    }
+
+    /*
+     * An interrupted waiter stops the batch: its pending tasks are skipped, its running ones
+     * interrupted, and a CancellationException is thrown with the interrupt flag kept set.
+     */
+    private void awaitOrRethrow(Batch batch) {
+        try {
+            await(batch.done());
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            // an Error fails the batch like any exception, and reaches the caller's error handling wrapped
+            throw new IllegalStateException(cause);
+        }
+        catch (InterruptedException e) {
+            CancellationException cancelled = new CancellationException("Interrupted while waiting for the batch");
+            cancelled.initCause(e);
+            if (batch.cancel(cancelled)) cancelPending(batch);
+            Thread.currentThread().interrupt();
+            throw cancelled;
+        }
+    }
+
+    // Removes the batch's tasks that have not started yet
+    private void cancelPending(Batch batch) {
+        List<PendingTask> cancelled = new ArrayList<>();
+        synchronized (pending) {
+            cancelled.addAll(pending.removeIf(batch.tenant(), t -> t.batch == batch));
+            queuedBytes -= bytesOf(cancelled);
+            if (!cancelled.isEmpty()) pending.notifyAll();
+        }
+        for (PendingTask t : cancelled) {
+            t.batch.skipped();
+            t.future.cancel(false);
+            taskDone();
+        }
+    }
+
+    /**
+     * Runs body over [0, total) and waits until it is done. Instead of fixed slices, every worker
+     * repeatedly claims the next chunk, sized by its calibrated speed: a worker that is twice as
+     * fast claims chunks twice as large, so a slow or contended core does not hold up the tail.
+     * Chunks shrink with the remaining work, down to one unit. Each chunk updates the speed of
+     * the worker that ran it.
+     */
+    public void submitChunks(int total, RangeTask body) {
+        submitChunks(total, body, CancellationToken.none());
+    }
+
+    /**
+     * Like submitChunks, checking the token before every chunk.
+     */
+    public void submitChunks(int total, RangeTask body, CancellationToken token) {
+        submitChunks(total, body, token, defaultTenant);
+    }
+
+    /**
+     * Like submitChunks with a token, running the chunks as the tenant's.
+     */
+    public void submitChunks(int total, RangeTask body, CancellationToken token, Tenant tenant) {
+        submitChunks(total, body, token, tenant, 0);
+    }
+
+    /**
+     * Like submitChunks with a token and tenant, counting estimatedBytes against the queue's byte bound.
+     */
+    public void submitChunks(int total, RangeTask body, CancellationToken token, Tenant tenant, long estimatedBytes) {
+        if (body == null) throw new IllegalArgumentException("body is null");
+        if (token == null) throw new IllegalArgumentException("token is null");
+        if (tenant == null) throw new IllegalArgumentException("tenant is null");
+        if (total <= 0) return;
+        AtomicInteger next = new AtomicInteger(0);
+        // more claimers than the tenant may run at once would only wait for each other
+        int claimerCount = Math.min(Math.min(config.getMaxThreads(), tenant.getMaxConcurrent()), total);
+        Batch batch = new Batch(claimerCount, tenant);
+        List<Consumer<TiredThread>> claimers = new ArrayList<>();
+        for (int i = 0; i < claimerCount; i++) {
+            claimers.add(worker -> {
+                // claimers stop taking chunks once a chunk has failed
+                while (!batch.isFailed()) {
+                    int remaining = total - next.get();
+                    if (remaining <= 0) return;
+                    // a claimer run by the submitter has no worker and takes an average share
+                    double share = worker == null ? 1.0 / workers.size() : speedShare(worker);
+                    int size = Math.max(1, (int) Math.ceil(remaining * share / CHUNK_DIVISOR));
+                    int from = next.getAndAdd(size);
+                    if (from >= total) return;
+                    int to = Math.min(total, from + size);
+                    token.throwIfCancelled();
+                    long start = System.nanoTime();
+                    body.run(from, to);
+                    if (worker != null) worker.recordSpeed(to - from, System.nanoTime() - start);
+                }
+            });
+        }
+        enqueue(batch, claimers, tenant, estimatedBytes);
+        awaitOrRethrow(batch);
+    }
+
+    // The worker's part of the pool's total speed; uncalibrated workers count as average
+    private double speedShare(TiredThread worker) {
+        double total = 0;
+        int calibrated = 0;
+        for (TiredThread w : workers) {
+            double speed = w.getSpeed();
+            if (speed > 0) {
+                total += speed;
+                calibrated++;
+            }
+        }
+        if (calibrated == 0) return 1.0 / workers.size();
+        double average = total / calibrated;
+        total += average * (workers.size() - calibrated);
+        double own = worker.getSpeed() > 0 ? worker.getSpeed() : average;
+        return own / total;
+    }
+
+    /**
+     * Calibrated speed of each current worker in work units per nanosecond, in worker id order.
+     * 0 means the worker has not run a chunk yet.
+     */
+    public double[] getWorkerSpeeds() {
+        List<TiredThread> current = new ArrayList<>(workers);
+        double[] speeds = new double[current.size()];
+        for (int i = 0; i < speeds.length; i++) {
+            speeds[i] = current.get(i).getSpeed();
+        }
+        return speeds;
+    }
+
+    public int getWorkerCount() {
+        return workers.size();
+    }
+
+    // With SPIN_PARK, short batches finish while the caller spins, so it is not parked and woken
+    private void await(CompletableFuture<Void> batch) throws InterruptedException, ExecutionException {
+        if (handoffMode == HandoffMode.SPIN_PARK) {
+            for (int spins = 0; spins < TaskSlot.SPIN_LIMIT && !batch.isDone(); spins++) {
+                Thread.onSpinWait();
+            }
+        }
+        batch.get();
+    }
+
+    /**
+     * Registers a tenant so the worker report lists its queue wait and CPU time. Tasks of
+     * unregistered tenants are scheduled the same way, just not reported.
+     */
+    public void registerTenant(Tenant tenant) {
+        if (tenant == null) throw new IllegalArgumentException("tenant is null");
+        if (!tenants.contains(tenant)) tenants.add(tenant);
+    }
 
-        synchronized(inFlight){
-            while(inFlight.get()>0){
-                try{
-                    inFlight.wait();
+    // Hands pending tasks to idle workers, least tired first, taking the tenants in deficit round-robin order
+    private void dispatch() {
+        synchronized (pending) {
+            while (!pending.isEmpty()) {
+                boolean grow = idleMinHeap.isEmpty() && workers.size() < config.getMaxThreads();
+                if (idleMinHeap.isEmpty() && !grow) return;
+                PendingTask next = pending.poll();
+                if (next == null) return; // every tenant with waiting tasks is at its cap
+                queuedBytes -= next.bytes;
+                if (config.isQueueBounded()) pending.notifyAll();
+                if (grow) {
+                    // tasks are waiting and every worker is busy
+                    recordDecision("grew to " + (workers.size() + 1) + " workers, " + (pending.size() + 1) + " tasks waiting");
+                    grown++;
+                    addWorker();
                 }
-                catch(InterruptedException e){
-                    Thread.currentThread().interrupt();
-                    return;
+                // only this lock holder polls and the reaper needs the lock, so a worker is there
+                TiredThread worker = idleMinHeap.poll();
+                next.tenant.started(System.nanoTime() - next.enqueuedAt);
+                if (threadMode == ThreadMode.VIRTUAL) {
+                    // the worker goes back only once execute has done its accounting, or the
+                    // next virtual thread could start on it while this one is still finishing
+                    Thread.ofVirtual().name(worker.getName()).start(() -> {
+                        try {
+                            worker.execute(() -> runOn(worker, next));
+                        }
+                        finally {
+                            returnWorker(worker);
+                        }
+                    });
                 }
+                else {
+                    worker.newTask(() -> runOn(worker, next));
+                }
+            }
+        }
+    }
+
+    // worker is null for a task the submitter runs itself under CALLER_RUNS
+    private void runOn(TiredThread worker, PendingTask pendingTask) {
+        long startTime = System.nanoTime();
+        Batch batch = pendingTask.batch;
+        Throwable failure = null; // an Error too, or its future would never complete
+        boolean ran = false;
+        try {
+            if (batch == null || batch.start()) {
+                ran = true;
+                pendingTask.task.accept(worker);
+            }
+        }
+        catch(Throwable e) {
+            failure = e;
+        }
+        finally {
+            long duration = System.nanoTime() - startTime;
+            // accounted before the batch can complete, so its waiter sees the tenant's totals
+            pendingTask.tenant.finished(duration);
+            if (batch != null && batch.finish(failure)) {
+                cancelPending(batch);
+            }
+            if (worker != null) {
+                // fatigue may only change while the worker is out of the heap, or the heap order breaks
+                worker.addTimeUsed(duration);
+                // a platform worker takes its next task only after this one returns, so it can go back now
+                if (threadMode != ThreadMode.VIRTUAL) returnWorker(worker);
+            }
+        }
+        if (!ran) pendingTask.future.cancel(false);
+        else if (failure == null) pendingTask.future.complete(null);
+        else pendingTask.future.completeExceptionally(failure);
+    }
+
+    private void returnWorker(TiredThread worker) {
+        idleMinHeap.offer(worker); //adding back to the heap by fatigue (comparable implemented at TiredThread)
+        dispatch();
+        taskDone();
+    }
+
+    private void taskDone() {
+        int left = inFlight.decrementAndGet();
+        if (left == 0) {
+            synchronized (inFlight) {
+                inFlight.notifyAll();
             }
         }
     }
 
     public void shutdown() throws InterruptedException {
+        synchronized (pending) {
+            shutdown = true;
+            pending.notifyAll(); // submitters waiting for queue space give up
+        }
+        if (reaper != null) {
+            reaper.interrupt();
+            reaper.join();
+        }
         synchronized (inFlight) {
             while (inFlight.get() > 0) {
                 inFlight.wait();
             }
         }
 
+        if (threadMode == ThreadMode.VIRTUAL) return; // workers were never started
         for (TiredThread w : workers) {
             w.shutdown();
         }
         for (TiredThread w : workers) {
             w.join();
         }
+        for (TiredThread w : retired) {
+            w.join();
+        }
     }
 
     public synchronized String getWorkerReport() {
         // TODO: return readable statistics for each worker
         String result="";
-        for(int i=0;i<workers.length;i++){
-            result=result+"Worker ID: "+workers[i].getWorkerId()+", Fatigue: "+workers[i].getFatigue()
-            +", Time Used:"+workers[i].getTimeUsed()+",Time Idle:"+workers[i].getTimeIdle()+"\n";
+        for(TiredThread w : workers){
+            result=result+"Worker ID: "+w.getWorkerId()+", Fatigue: "+w.getFatigue()
+            +", Time Used:"+w.getTimeUsed()+",Time Idle:"+w.getTimeIdle()
+            +", Speed: "+String.format("%.3f", w.getSpeed() * 1e6)+" units/ms\n";
+        }
+        if (config.isElastic()) {
+            synchronized (pending) {
+                result=result+"Pool: "+workers.size()+" workers (min "+config.getNumThreads()+", max "+config.getMaxThreads()
+                +"), grown "+grown+" times, retired "+retired.size()+" workers\n";
+                for (String decision : poolDecisions) {
+                    result=result+"  "+decision+"\n";
+                }
+            }
+        }
+        if (config.isQueueBounded()) {
+            synchronized (pending) {
+                result=result+"Queue: "+pending.size()+" tasks, "+queuedBytes+" bytes waiting (max "
+                +(config.getMaxQueuedTasks() == ExecutorConfig.UNBOUNDED_TASKS ? "unbounded" : config.getMaxQueuedTasks())+" tasks, "
+                +(config.getMaxQueuedBytes() == ExecutorConfig.UNBOUNDED_BYTES ? "unbounded" : config.getMaxQueuedBytes())+" bytes), policy "
+                +config.getOverflowPolicy()+", blocked "+blockedSubmissions+", caller ran "+callerRan.get()+", rejected "+rejected+"\n";
+            }
+        }
+        for (Tenant t : tenants) {
+            result=result+t+"\n";
         }
         return result;
     }
@@ -1,7 +1,5 @@
 package scheduling;
 
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -14,8 +12,8 @@ public class TiredThread extends Thread implements Comparable<TiredThread> {
 
     private final AtomicBoolean alive = new AtomicBoolean(true); // Indicates if the worker should keep running
 
-    // Single-slot handoff queue; executor will put tasks here
-    private final BlockingQueue<Runnable> handoff = new ArrayBlockingQueue<>(1);
+    // Single-slot handoff; executor will put tasks here
+    private final TaskSlot handoff;
 
     private final AtomicBoolean busy = new AtomicBoolean(false); // Indicates if the worker is currently executing a task
 
@@ -23,8 +21,16 @@ public class TiredThread extends Thread implements Comparable<TiredThread> {
     private final AtomicLong timeIdle = new AtomicLong(0); // Total time spent idle
     private final AtomicLong idleStartTime = new AtomicLong(0); // Timestamp when the worker became idle
 
+    private static final double SPEED_SMOOTHING = 0.3; // Weight of the newest sample in the speed average
+    private volatile double speed = 0; // Work units per nanosecond, 0 until the first measurement
+
     public TiredThread(int id, double fatigueFactor) {
+        this(id, fatigueFactor, HandoffMode.QUEUE);
+    }
+
+    public TiredThread(int id, double fatigueFactor, HandoffMode handoffMode) {
         this.id = id;
+        this.handoff = TaskSlot.create(handoffMode);
         this.fatigueFactor = fatigueFactor;
         this.idleStartTime.set(System.nanoTime());
         setName(String.format("FF=%.2f", fatigueFactor));
@@ -50,6 +56,11 @@ public class TiredThread extends Thread implements Comparable<TiredThread> {
         return timeIdle.get();
     }
 
+    /** System.nanoTime() at which the current or last idle period started. */
+    public long getIdleSince() {
+        return idleStartTime.get();
+    }
+
     /**
      * Assign a task to this worker.
      * This method is non-blocking: if the worker is not ready to accept a task,
@@ -96,24 +107,7 @@ public class TiredThread extends Thread implements Comparable<TiredThread> {
                      break; // Exit the loop to terminate the thread
                 }
 
-                // Update idle time
-                long idleEndTime = System.nanoTime();
-                long idleDuration = idleEndTime - idleStartTime.get();
-                timeIdle.addAndGet(idleDuration);
-
-                // Execute the task
-                busy.set(true);
-                try{
-                    task.run();
-                } catch (Exception e){
-                    // Catch any exception to prevent the thread from dying
-                    e.printStackTrace(); // Log the exception
-                }
-                long endTime = System.nanoTime();
-                busy.set(false);
-
-                // Mark the start of the next idle period
-                idleStartTime.set(endTime);
+                execute(task);
 
             }
             catch (InterruptedException e) {
@@ -124,6 +118,32 @@ public class TiredThread extends Thread implements Comparable<TiredThread> {
         }
     }
 
+    /**
+     * Runs one task on the calling thread with this worker's idle and busy accounting.
+     * The run loop uses it for handed-off tasks; in virtual-thread mode the executor calls it
+     * from the virtual thread that carries the task.
+     */
+    public void execute(Runnable task) {
+        // Update idle time
+        long idleEndTime = System.nanoTime();
+        long idleDuration = idleEndTime - idleStartTime.get();
+        timeIdle.addAndGet(idleDuration);
+
+        // Execute the task
+        busy.set(true);
+        try{
+            task.run();
+        } catch (Throwable e){
+            // Catch any exception or error to prevent the thread from dying
+            e.printStackTrace(); // Log the exception
+        }
+        long endTime = System.nanoTime();
+        busy.set(false);
+
+        // Mark the start of the next idle period
+        idleStartTime.set(endTime);
+    }
+
     @Override
     public int compareTo(TiredThread o) {
        if(this.getFatigue() < o.getFatigue()){
@@ -135,7 +155,24 @@ public class TiredThread extends Thread implements Comparable<TiredThread> {
        }
     }
 
+    /**
+     * Changes the fatigue, so the executor calls it only while this worker is out of the idle heap.
+     */
     public void addTimeUsed(long duration){
         timeUsed.addAndGet(duration);
     }
+
+    /**
+     * Folds one measurement into the speed estimate, an exponentially weighted moving average
+     * of work units per nanosecond. Only the worker itself calls it, from the task it is running.
+     */
+    public void recordSpeed(long units, long nanos) {
+        if (units <= 0 || nanos <= 0) return;
+        double sample = (double) units / nanos;
+        speed = speed == 0 ? sample : SPEED_SMOOTHING * sample + (1 - SPEED_SMOOTHING) * speed;
+    }
+
+    public double getSpeed() {
+        return speed;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,208 @@
+package spl.lae;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import parser.ComputationNode;
+import parser.InputParser;
+import parser.OutputWriter;
+
+/**
+ * Runs many input files through one engine as a three stage pipeline: while one file is being
+ * computed, the next one is parsed and the previous one is written. The stages hand work to each
+ * other through bounded queues, so a slow stage holds back the others instead of buffering files.
+ *
+ * A file that fails to parse or compute gets an {"error": ...} output, as with Main, and the
+ * batch goes on, even when the failure is an Error such as running out of stack. A stage always
+ * hands END on when it stops, so the stages after it never wait on it forever.
+ */
+public class BatchRunner {
+
+    public static class Job {
+        public final Path input;
+        public final Path output;
+        public Job(Path input, Path output) { this.input = input; this.output = output; }
+    }
+
+    // Travels between the stages; exactly one of root, result and error is set
+    private static class Item {
+        final Job job;
+        ComputationNode root;
+        double[][] result;
+        String error;
+        Item(Job job) { this.job = job; }
+    }
+
+    private static final Item END = new Item(null);
+
+    private final LinearAlgebraEngine engine;
+    private final int queueCapacity;
+
+    public BatchRunner(LinearAlgebraEngine engine, int queueCapacity) {
+        if (queueCapacity < 1) throw new IllegalArgumentException("queueCapacity must be positive");
+        this.engine = engine;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * A directory yields every *.json file in it, written under the same name in outputDir.
+     * Any other file is read as a manifest with one "input output" pair per line; relative
+     * paths are resolved against the manifest's directory and blank or # lines are skipped.
+     */
+    public static List<Job> listJobs(Path inputs, Path outputDir) throws IOException {
+        List<Job> jobs = new ArrayList<>();
+        if (Files.isDirectory(inputs)) {
+            try (Stream<Path> files = Files.list(inputs)) {
+                files.filter(p -> p.getFileName().toString().endsWith(".json") && Files.isRegularFile(p))
+                        .sorted()
+                        .forEach(p -> jobs.add(new Job(p, outputDir.resolve(p.getFileName()))));
+            }
+            return jobs;
+        }
+        Path base = inputs.toAbsolutePath().getParent();
+        for (String line : Files.readAllLines(inputs)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] parts = line.split("\\s+");
+            if (parts.length != 2) throw new IllegalArgumentException("Manifest lines must be <input> <output>: " + line);
+            jobs.add(new Job(base.resolve(parts[0]), base.resolve(parts[1])));
+        }
+        return jobs;
+    }
+
+    public Report run(List<Job> jobs) throws InterruptedException {
+        BlockingQueue<Item> parsed = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Item> computed = new ArrayBlockingQueue<>(queueCapacity);
+        Report report = new Report();
+        long start = System.nanoTime();
+
+        Thread parseStage = new Thread(() -> {
+            InputParser parser = new InputParser();
+            try {
+                for (Job job : jobs) {
+                    long t = System.nanoTime();
+                    Item item = new Item(job);
+                    try {
+                        item.root = parser.parse(job.input.toString());
+                    }
+                    catch (Throwable e) {
+                        item.error = messageOf(e);
+                    }
+                    report.parseNanos.addAndGet(System.nanoTime() - t);
+                    parsed.put(item);
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            finally {
+                end(parsed);
+            }
+        }, "batch-parse");
+
+        Thread computeStage = new Thread(() -> {
+            try {
+                for (Item item = parsed.take(); item != END; item = parsed.take()) {
+                    if (item.root != null) {
+                        long t = System.nanoTime();
+                        try {
+                            item.result = engine.run(item.root).getMatrix();
+                        }
+                        catch (Throwable e) {
+                            item.error = messageOf(e.getCause() != null ? e.getCause() : e);
+                        }
+                        item.root = null;
+                        report.computeNanos.addAndGet(System.nanoTime() - t);
+                    }
+                    computed.put(item);
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            finally {
+                end(computed);
+            }
+        }, "batch-compute");
+
+        parseStage.start();
+        computeStage.start();
+        // The calling thread is the write stage
+        try {
+            for (Item item = computed.take(); item != END; item = computed.take()) {
+                long t = System.nanoTime();
+                try {
+                    if (item.error != null) {
+                        OutputWriter.write(item.error, item.job.output.toString());
+                        report.failed.incrementAndGet();
+                    }
+                    else {
+                        OutputWriter.write(item.result, item.job.output.toString());
+                        report.succeeded.incrementAndGet();
+                    }
+                }
+                catch (IOException e) {
+                    System.out.println("could not write " + item.job.output + ": " + e.getMessage());
+                    report.failed.incrementAndGet();
+                }
+                report.writeNanos.addAndGet(System.nanoTime() - t);
+            }
+        }
+        finally {
+            parseStage.interrupt();
+            computeStage.interrupt();
+            parseStage.join();
+            computeStage.join();
+        }
+        report.elapsedNanos = System.nanoTime() - start;
+        return report;
+    }
+
+    // Puts END even if the stage died; an interrupted stage has no one left to hand it to
+    private static void end(BlockingQueue<Item> queue) {
+        try {
+            queue.put(END);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // An Error such as StackOverflowError may have no message, and a null error would read as success
+    private static String messageOf(Throwable e) {
+        return e.getMessage() != null ? e.getMessage() : e.toString();
+    }
+
+    public static class Report {
+        private final AtomicLong succeeded = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong parseNanos = new AtomicLong();
+        private final AtomicLong computeNanos = new AtomicLong();
+        private final AtomicLong writeNanos = new AtomicLong();
+        private long elapsedNanos;
+
+        public long getSucceeded() { return succeeded.get(); }
+        public long getFailed() { return failed.get(); }
+        public long getElapsedNanos() { return elapsedNanos; }
+
+        public double jobsPerSecond() {
+            long jobs = succeeded.get() + failed.get();
+            return elapsedNanos == 0 ? 0 : jobs / (elapsedNanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Jobs: %d (%d failed), Elapsed: %.3fs, Throughput: %.1f jobs/s%n"
+                            + "Stage busy time: parse %.3fs, compute %.3fs, write %.3fs",
+                    succeeded.get() + failed.get(), failed.get(), elapsedNanos / 1e9, jobsPerSecond(),
+                    parseNanos.get() / 1e9, computeNanos.get() / 1e9, writeNanos.get() / 1e9);
+        }
+    }
+}
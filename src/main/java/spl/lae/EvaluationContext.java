@@ -0,0 +1,39 @@
+package spl.lae;
+
+import memory.BitMatrix;
+import memory.MatrixStructure;
+import memory.SharedMatrix;
+import memory.VectorFormat;
+import scheduling.CancellationToken;
+import scheduling.Tenant;
+
+/**
+ * Operands and result of the node currently being computed by one run of the engine.
+ * Each call to LinearAlgebraEngine.run gets its own context, which is what lets
+ * concurrent runs share a single engine.
+ */
+public final class EvaluationContext {
+
+    SharedMatrix leftMatrix;
+    SharedMatrix rightMatrix;
+    BitMatrix bitResult = null; // set instead of leftMatrix by boolean-semiring multiplies
+    MatrixStructure resultStructure = null; // structure of the result, when it follows from the operands
+    final CancellationToken token;
+    final Tenant tenant; // whose queue the run's tasks wait in
+
+    EvaluationContext(VectorFormat format) {
+        this(format, CancellationToken.none(), Tenant.of("run"));
+    }
+
+    EvaluationContext(VectorFormat format, CancellationToken token, Tenant tenant) {
+        this.token = token;
+        this.tenant = tenant;
+        this.leftMatrix = SharedMatrix.empty(format);
+        this.rightMatrix = SharedMatrix.empty(format);
+    }
+
+    /** Estimated size of the current operands, which the node's queued tasks keep alive. */
+    long operandBytes() {
+        return leftMatrix.estimatedBytes() + rightMatrix.estimatedBytes();
+    }
+}
@@ -0,0 +1,341 @@
+package spl.lae;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import memory.Precision;
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+
+/**
+ * An expression tree that keeps the result of every node between evaluations, for pipelines
+ * that run the same expression again after changing a few of its leaves.
+ *
+ * updateLeaf records which rows of the leaf changed; evaluate then recomputes only the nodes
+ * above a changed leaf, and only as much of each as the algebra requires:
+ * - rows of A + B, -A, A * B and alpha * A * B + beta * C depend only on the same rows of A
+ *   (and B, C for the sums), so when A changed in a few rows only those rows are recomputed;
+ * - when only B of A * B changed, in k rows, the stored product is corrected with the rank-k
+ *   update A[:, k] * (B' - B)[k, :] instead of multiplying again.
+ * Every other change recomputes the node whole. Each step runs on the engine.
+ *
+ * An evaluation that fails part way, e.g. on a cancelled or rejected run, changes nothing: the
+ * new results are kept aside until every node has been computed, so the next evaluation applies
+ * the same leaf changes again.
+ *
+ * Not thread-safe: use one graph from one thread at a time.
+ */
+public class EvaluationGraph {
+
+    private static final class Node {
+        final ComputationNode operator; // null for leaves
+        final List<Node> children = new ArrayList<>();
+        double[][] values; // null until first evaluated
+        Precision precision = Precision.FLOAT64;
+        Change pending = null; // leaves: changes since the last evaluation
+        Node(ComputationNode operator) { this.operator = operator; }
+    }
+
+    // Rows of a node that changed in one evaluation, with their previous values
+    private static final class Change {
+        final TreeMap<Integer, double[]> before; // null: every row, or the shape changed
+        Change(TreeMap<Integer, double[]> before) { this.before = before; }
+        boolean isAll() { return before == null; }
+    }
+
+    private static final Change ALL = new Change(null);
+
+    // Results of one evaluation, written to the nodes only once all of them are computed
+    private static final class Staged {
+        final Map<Node, double[][]> values = new IdentityHashMap<>();
+        final Map<Node, Precision> precisions = new IdentityHashMap<>();
+        long recomputed = 0;
+        long deltaUpdated = 0;
+        long reused = 0;
+
+        void put(Node node, double[][] newValues, Precision precision) {
+            values.put(node, newValues);
+            precisions.put(node, precision);
+        }
+
+        double[][] valuesOf(Node node) {
+            return values.getOrDefault(node, node.values);
+        }
+
+        Precision precisionOf(Node node) {
+            return precisions.getOrDefault(node, node.precision);
+        }
+    }
+
+    private final LinearAlgebraEngine engine;
+    private final Node root;
+    private final List<Node> leaves = new ArrayList<>();
+
+    private long recomputed = 0;
+    private long deltaUpdated = 0;
+    private long reused = 0;
+
+    /**
+     * Takes the tree's structure and leaf values; the tree itself is not changed.
+     */
+    public EvaluationGraph(LinearAlgebraEngine engine, ComputationNode expression) {
+        if (engine == null || expression == null) throw new IllegalArgumentException("engine and expression cannot be null");
+        this.engine = engine;
+        ComputationNode copy = expression.deepCopy();
+        copy.fuseMultiplyAdd();
+        this.root = build(copy);
+    }
+
+    private Node build(ComputationNode node) {
+        if (node.getNodeType() == ComputationNodeType.MATRIX) {
+            Node leaf = new Node(null);
+            leaf.values = node.getMatrix();
+            leaf.precision = node.getPrecision();
+            leaf.pending = ALL;
+            leaves.add(leaf);
+            return leaf;
+        }
+        Node op = new Node(node);
+        for (ComputationNode child : node.getChildren()) {
+            op.children.add(build(child));
+        }
+        return op;
+    }
+
+    /** Number of leaf matrices, numbered left to right from 0. */
+    public int getLeafCount() {
+        return leaves.size();
+    }
+
+    public double[][] getLeaf(int index) {
+        return copyOf(leafAt(index).values);
+    }
+
+    /**
+     * Replaces the values of a leaf. The graph keeps its own copy, so the caller may reuse the array.
+     */
+    public void updateLeaf(int index, double[][] values) {
+        if (values == null) throw new IllegalArgumentException("values cannot be null");
+        Node leaf = leafAt(index);
+        Change change = diff(leaf.values, values);
+        if (change == null) return;
+        leaf.values = copyOf(values);
+        leaf.pending = merge(leaf.pending, change);
+    }
+
+    private Node leafAt(int index) {
+        if (index < 0 || index >= leaves.size()) {
+            throw new IllegalArgumentException("No leaf " + index + ", the expression has " + leaves.size());
+        }
+        return leaves.get(index);
+    }
+
+    /**
+     * Brings every node up to date with the leaves and returns the value of the expression.
+     */
+    public double[][] evaluate() {
+        Staged staged = new Staged();
+        evaluate(root, staged);
+        for (Node leaf : leaves) {
+            leaf.pending = null;
+        }
+        for (Map.Entry<Node, double[][]> e : staged.values.entrySet()) {
+            e.getKey().values = e.getValue();
+            e.getKey().precision = staged.precisions.get(e.getKey());
+        }
+        recomputed += staged.recomputed;
+        deltaUpdated += staged.deltaUpdated;
+        reused += staged.reused;
+        return copyOf(root.values);
+    }
+
+    private Change evaluate(Node node, Staged staged) {
+        if (node.operator == null) {
+            return node.pending;
+        }
+        List<Change> changes = new ArrayList<>();
+        boolean changed = false;
+        for (Node child : node.children) {
+            Change c = evaluate(child, staged);
+            changes.add(c);
+            changed |= c != null;
+        }
+        if (node.values != null && !changed) {
+            staged.reused++;
+            return null;
+        }
+        if (node.values != null) {
+            Change change = updateRows(node, changes, staged);
+            if (change == null) change = updateByRank(node, changes, staged);
+            if (change != null) {
+                staged.deltaUpdated++;
+                return change;
+            }
+        }
+        ComputationNode result = engine.run(node.operator.withOperands(operands(node, null, staged)));
+        staged.put(node, result.getMatrix(), result.getPrecision());
+        staged.recomputed++;
+        return ALL;
+    }
+
+    /*
+     * Operands of the node as leaves, restricted to the given rows for the row-local ones.
+     * Copies, since the engine may compute into the arrays of its leaves.
+     */
+    private static List<ComputationNode> operands(Node node, int[] rows, Staged staged) {
+        List<ComputationNode> operands = new ArrayList<>();
+        for (int i = 0; i < node.children.size(); i++) {
+            Node child = node.children.get(i);
+            double[][] childValues = staged.valuesOf(child);
+            double[][] values = rows != null && isRowLocal(node, i) ? rowsOf(childValues, rows) : copyOf(childValues);
+            ComputationNode operand = new ComputationNode(values);
+            operand.setPrecision(staged.precisionOf(child));
+            operands.add(operand);
+        }
+        return operands;
+    }
+
+    // Whether row r of the node depends only on row r of this operand
+    private static boolean isRowLocal(Node node, int operand) {
+        switch (node.operator.getNodeType()) {
+            case ADD:
+            case NEGATE:
+                return true;
+            case MULTIPLY:
+                return operand == 0;
+            case MULTIPLY_ADD:
+                return operand != 1;
+            default:
+                return false;
+        }
+    }
+
+    /*
+     * Recomputes only the changed rows, when the node is row-local in every changed operand and
+     * those changed in some rows only. Returns null if that does not apply.
+     */
+    private Change updateRows(Node node, List<Change> changes, Staged staged) {
+        ComputationNodeType type = node.operator.getNodeType();
+        if (type != ComputationNodeType.ADD && type != ComputationNodeType.NEGATE
+                && type != ComputationNodeType.MULTIPLY && type != ComputationNodeType.MULTIPLY_ADD) {
+            return null;
+        }
+        TreeMap<Integer, double[]> before = new TreeMap<>();
+        for (int i = 0; i < changes.size(); i++) {
+            Change c = changes.get(i);
+            if (c == null) continue;
+            if (c.isAll() || !isRowLocal(node, i)) return null;
+            for (int row : c.before.keySet()) before.put(row, null);
+        }
+        if (before.size() == node.values.length) return null;
+        int[] rows = before.keySet().stream().mapToInt(Integer::intValue).toArray();
+        double[][] updated = engine.run(node.operator.withOperands(operands(node, rows, staged))).getMatrix();
+        double[][] values = node.values.clone(); // the stored rows stay as they are until the evaluation succeeds
+        for (int k = 0; k < rows.length; k++) {
+            before.put(rows[k], node.values[rows[k]]);
+            values[rows[k]] = updated[k];
+        }
+        staged.put(node, values, node.precision);
+        return new Change(before);
+    }
+
+    /*
+     * For A * B where only B changed, in k rows with k at most half the inner dimension, adds
+     * A[:, k] * (B' - B)[k, :] to the stored product. Every row of the product changes.
+     * Returns null if that does not apply.
+     */
+    private Change updateByRank(Node node, List<Change> changes, Staged staged) {
+        if (node.operator.getNodeType() != ComputationNodeType.MULTIPLY || node.operator.isBooleanSemiring()) return null;
+        Change left = changes.get(0);
+        Change right = changes.get(1);
+        if (left != null || right == null || right.isAll()) return null;
+        double[][] a = staged.valuesOf(node.children.get(0));
+        double[][] b = staged.valuesOf(node.children.get(1));
+        int[] rows = right.before.keySet().stream().mapToInt(Integer::intValue).toArray();
+        if (2 * rows.length > b.length) return null;
+
+        double[][] columns = new double[a.length][rows.length];
+        for (int i = 0; i < a.length; i++) {
+            for (int k = 0; k < rows.length; k++) columns[i][k] = a[i][rows[k]];
+        }
+        double[][] delta = new double[rows.length][];
+        for (int k = 0; k < rows.length; k++) {
+            double[] now = b[rows[k]];
+            double[] old = right.before.get(rows[k]);
+            delta[k] = new double[now.length];
+            for (int j = 0; j < now.length; j++) delta[k][j] = now[j] - old[j];
+        }
+        // fuses to one multiply-add into the stored product
+        ComputationNode update = new ComputationNode(ComputationNodeType.ADD, List.of(
+                new ComputationNode(ComputationNodeType.MULTIPLY, List.of(new ComputationNode(columns), new ComputationNode(delta))),
+                new ComputationNode(copyOf(node.values))));
+        staged.put(node, engine.run(update).getMatrix(), node.precision);
+        return ALL;
+    }
+
+    // Rows that differ between the two matrices, with their old values; null if none do
+    private static Change diff(double[][] old, double[][] now) {
+        if (old.length != now.length) return ALL;
+        TreeMap<Integer, double[]> before = new TreeMap<>();
+        for (int i = 0; i < now.length; i++) {
+            if (old[i].length != now[i].length) return ALL;
+            for (int j = 0; j < now[i].length; j++) {
+                // compared bitwise, so NaN entries and signed zeros count as unchanged only when identical
+                if (Double.doubleToLongBits(old[i][j]) != Double.doubleToLongBits(now[i][j])) {
+                    before.put(i, old[i]);
+                    break;
+                }
+            }
+        }
+        return before.isEmpty() ? null : new Change(before);
+    }
+
+    // Two updates of one leaf between evaluations; the older values of a row are the ones to keep
+    private static Change merge(Change earlier, Change later) {
+        if (earlier == null) return later;
+        if (earlier.isAll() || later.isAll()) return ALL;
+        TreeMap<Integer, double[]> before = new TreeMap<>(later.before);
+        before.putAll(earlier.before);
+        return new Change(before);
+    }
+
+    private static double[][] rowsOf(double[][] values, int[] rows) {
+        double[][] selected = new double[rows.length][];
+        for (int k = 0; k < rows.length; k++) {
+            selected[k] = values[rows[k]].clone();
+        }
+        return selected;
+    }
+
+    private static double[][] copyOf(double[][] values) {
+        double[][] copy = new double[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            copy[i] = values[i].clone();
+        }
+        return copy;
+    }
+
+    /** Nodes computed whole, over every evaluation so far. */
+    public long getRecomputed() {
+        return recomputed;
+    }
+
+    /** Nodes brought up to date from their changed rows only. */
+    public long getDeltaUpdated() {
+        return deltaUpdated;
+    }
+
+    /** Nodes whose stored result was still valid. */
+    public long getReused() {
+        return reused;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Graph: %d leaves, recomputed %d nodes, delta-updated %d, reused %d",
+                leaves.size(), recomputed, deltaUpdated, reused);
+    }
+}
@@ -0,0 +1,90 @@
+package spl.lae;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Sends one job to a running LaeServer and writes the answer where Main would have written it.
+ */
+public class LaeClient {
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final int port;
+    private String tenant = null;
+
+    public LaeClient(int port) {
+        this.port = port;
+    }
+
+    /** Tenant the following jobs are sent as; null sends them without one. */
+    public void setTenant(String tenant) {
+        this.tenant = tenant;
+    }
+
+    /** Sends the expression itself as the request body. */
+    public HttpResponse<String> submitJson(String json) throws IOException, InterruptedException {
+        HttpRequest request = jobRequest("")
+                .POST(HttpRequest.BodyPublishers.ofString(json, StandardCharsets.UTF_8))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+    }
+
+    /** Asks the server to read the expression from a file; the path is resolved on the server side. */
+    public HttpResponse<String> submitPath(String inputPath) throws IOException, InterruptedException {
+        HttpRequest request = jobRequest("?file=" + URLEncoder.encode(inputPath, StandardCharsets.UTF_8))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+    }
+
+    private HttpRequest.Builder jobRequest(String query) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + LaeServer.JOB_PATH + query));
+        if (tenant != null) builder.header(LaeServer.TENANT_HEADER, tenant);
+        return builder;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 3) {
+            System.out.println("user input must be <port> <path/to/input/file> <path/to/output/file> [--by-path] [--tenant=<name>]");
+            return;
+        }
+        int port;
+        try {
+            port = Integer.parseInt(args[0]);
+        } catch (NumberFormatException e) {
+            System.out.println("port must be an integer");
+            return;
+        }
+        boolean byPath = false;
+        String tenant = null;
+        for (int i = 3; i < args.length; i++) {
+            if (args[i].equals("--by-path")) {
+                byPath = true;
+            }
+            else if (args[i].startsWith("--tenant=")) {
+                tenant = args[i].substring("--tenant=".length());
+            }
+            else {
+                System.out.println("unknown option: " + args[i]);
+                return;
+            }
+        }
+
+        LaeClient client = new LaeClient(port);
+        client.setTenant(tenant);
+        HttpResponse<String> response = byPath
+                ? client.submitPath(Path.of(args[1]).toAbsolutePath().toString())
+                : client.submitJson(Files.readString(Path.of(args[1])));
+        Files.writeString(Path.of(args[2]), response.body());
+        if (response.statusCode() != 200) {
+            System.out.println("server answered " + response.statusCode());
+        }
+    }
+}
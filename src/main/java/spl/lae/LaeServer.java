@@ -0,0 +1,282 @@
+package spl.lae;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import memory.VectorFormat;
+import parser.ComputationNode;
+import parser.InputParser;
+import parser.OutputWriter;
+import scheduling.CancellationToken;
+import scheduling.ExecutorConfig;
+import scheduling.Tenant;
+import scheduling.ThreadMode;
+
+/**
+ * Keeps one warm engine behind a loopback HTTP port, so short jobs do not pay for JVM startup,
+ * Jackson initialization and JIT warmup every time.
+ *
+ * POST /jobs with a JSON expression as the body, or POST /jobs?file=path to read the expression
+ * from a file the server can see. The answer is the same JSON Main writes: {"result": ...} with
+ * status 200, or {"error": ...} with status 400. At most maxJobs jobs run at once; further jobs
+ * are answered with 503 right away instead of queueing. A job running longer than the job timeout
+ * is stopped and answered with 408; the engine stays up for the next job. GET /status returns
+ * the worker report.
+ *
+ * A job sent with an X-Tenant header runs as that tenant: the workers are shared between tenants
+ * by weight, so one client flooding the server does not starve the others. Only tenants defined
+ * up front are accepted; a job naming any other tenant is answered with 400, so clients cannot
+ * grow the tenant list or pick a weight of their own. Jobs without the header each run as a
+ * tenant of their own.
+ */
+public class LaeServer implements AutoCloseable {
+
+    public static final String JOB_PATH = "/jobs";
+    public static final String STATUS_PATH = "/status";
+    public static final String TENANT_HEADER = "X-Tenant";
+    private static final long DEFAULT_CACHE_MB = 1024;
+    private static final long DEFAULT_CACHE_DISK_MB = 16384;
+
+    private final HttpServer server;
+    private final ExecutorService handlers = Executors.newCachedThreadPool();
+    private final LinearAlgebraEngine engine;
+    private final Semaphore admission;
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private volatile long jobTimeoutMillis = 0; // 0: no deadline
+    private final ConcurrentMap<String, Tenant> tenants = new ConcurrentHashMap<>();
+
+    /**
+     * Binds to the loopback address; port 0 picks a free port. The server owns the engine
+     * and closes it in close().
+     */
+    public LaeServer(LinearAlgebraEngine engine, int port, int maxJobs) throws IOException {
+        if (maxJobs < 1) throw new IllegalArgumentException("maxJobs must be positive");
+        this.engine = engine;
+        this.admission = new Semaphore(maxJobs);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext(JOB_PATH, this::handleJob);
+        server.createContext(STATUS_PATH, this::handleStatus);
+        server.setExecutor(handlers);
+    }
+
+    /** Deadline of every job from when it is admitted; 0 turns it off. */
+    public void setJobTimeout(long jobTimeoutMillis) {
+        if (jobTimeoutMillis < 0) throw new IllegalArgumentException("jobTimeoutMillis cannot be negative");
+        this.jobTimeoutMillis = jobTimeoutMillis;
+    }
+
+    /** Defines a tenant ahead of its first job, replacing any earlier definition for later jobs. */
+    public void defineTenant(String name, int weight, int maxConcurrent) {
+        Tenant tenant = new Tenant(name, weight, maxConcurrent);
+        tenants.put(name, tenant);
+        engine.registerTenant(tenant);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        handlers.shutdown();
+        engine.close();
+    }
+
+    private void handleJob(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                reply(exchange, 405, OutputWriter.toJson("Jobs must be sent with POST"));
+                return;
+            }
+            if (!admission.tryAcquire()) {
+                rejected.incrementAndGet();
+                reply(exchange, 503, OutputWriter.toJson("Server busy, try again later"));
+                return;
+            }
+            try {
+                long timeout = jobTimeoutMillis;
+                CancellationToken token = timeout > 0 ? CancellationToken.withTimeout(timeout) : CancellationToken.none();
+                Tenant tenant = tenantOf(exchange);
+                ComputationNode root = parseJob(exchange);
+                double[][] result = engine.run(root, token, tenant).getMatrix();
+                completed.incrementAndGet();
+                reply(exchange, 200, OutputWriter.toJson(result));
+            }
+            catch (CancellationException e) {
+                timedOut.incrementAndGet();
+                reply(exchange, 408, OutputWriter.toJson(e.getMessage()));
+            }
+            catch (Exception e) {
+                failed.incrementAndGet();
+                reply(exchange, 400, OutputWriter.toJson(messageOf(e)));
+            }
+            finally {
+                admission.release();
+            }
+        }
+    }
+
+    private void handleStatus(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String status = "completed=" + completed.get() + " failed=" + failed.get() + " rejected=" + rejected.get() + " timedOut=" + timedOut.get()
+                    + System.lineSeparator() + engine.getWorkerReport();
+            reply(exchange, 200, status, "text/plain");
+        }
+    }
+
+    private Tenant tenantOf(HttpExchange exchange) {
+        String name = exchange.getRequestHeaders().getFirst(TENANT_HEADER);
+        if (name == null || name.isBlank()) return Tenant.of("job");
+        Tenant tenant = tenants.get(name.trim());
+        if (tenant == null) throw new IllegalArgumentException("Unknown tenant: " + name.trim());
+        return tenant;
+    }
+
+    private static ComputationNode parseJob(HttpExchange exchange) throws Exception {
+        InputParser parser = new InputParser();
+        String file = queryParameter(exchange.getRequestURI().getRawQuery(), "file");
+        if (file != null) {
+            return parser.parse(file);
+        }
+        try (InputStream body = exchange.getRequestBody()) {
+            return parser.parseJson(new String(body.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static String queryParameter(String rawQuery, String name) {
+        if (rawQuery == null) return null;
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && pair.substring(0, eq).equals(name)) {
+                return URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    // run() wraps failures in IllegalArgumentException; the cause carries the useful message
+    private static String messageOf(Exception e) {
+        Throwable t = e.getCause() != null ? e.getCause() : e;
+        return t.getMessage() != null ? t.getMessage() : t.toString();
+    }
+
+    private static void reply(HttpExchange exchange, int status, String body) throws IOException {
+        reply(exchange, status, body, "application/json");
+    }
+
+    private static void reply(HttpExchange exchange, int status, String body, String contentType) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("user input must be <number of threads> <port> [--max-jobs=<n>] [--virtual-threads] [--job-timeout-ms=<ms>]"
+                    + " [--tenant-max-tasks=<n>] [--tenant=<name>:<weight>[:<max tasks>]]... [--cache-mb=<mb>] [--cache-dir=<dir>]");
+            return;
+        }
+        int numberOfThreads;
+        int port;
+        int maxJobs = 4;
+        ThreadMode threadMode = ThreadMode.PLATFORM;
+        long jobTimeoutMillis = 0;
+        int tenantMaxTasks = Tenant.UNLIMITED;
+        List<String[]> tenantSpecs = new ArrayList<>();
+        long cacheMegabytes = 0;
+        String cacheDir = null;
+        try {
+            numberOfThreads = Integer.parseInt(args[0]);
+            port = Integer.parseInt(args[1]);
+            for (int i = 2; i < args.length; i++) {
+                if (args[i].startsWith("--max-jobs=")) {
+                    maxJobs = Integer.parseInt(args[i].substring("--max-jobs=".length()));
+                }
+                else if (args[i].startsWith("--job-timeout-ms=")) {
+                    jobTimeoutMillis = Long.parseLong(args[i].substring("--job-timeout-ms=".length()));
+                }
+                else if (args[i].startsWith("--cache-mb=")) {
+                    cacheMegabytes = Long.parseLong(args[i].substring("--cache-mb=".length()));
+                }
+                else if (args[i].startsWith("--cache-dir=")) {
+                    cacheDir = args[i].substring("--cache-dir=".length());
+                }
+                else if (args[i].startsWith("--tenant-max-tasks=")) {
+                    tenantMaxTasks = Integer.parseInt(args[i].substring("--tenant-max-tasks=".length()));
+                }
+                else if (args[i].startsWith("--tenant=")) {
+                    String[] spec = args[i].substring("--tenant=".length()).split(":");
+                    if (spec.length < 2 || spec.length > 3) {
+                        System.out.println("--tenant must be <name>:<weight>[:<max tasks>]");
+                        return;
+                    }
+                    Integer.parseInt(spec[1]);
+                    if (spec.length == 3) Integer.parseInt(spec[2]);
+                    tenantSpecs.add(spec);
+                }
+                else if (args[i].equals("--virtual-threads")) {
+                    threadMode = ThreadMode.VIRTUAL;
+                }
+                else {
+                    System.out.println("unknown option: " + args[i]);
+                    return;
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("number of threads, port, --max-jobs, --job-timeout-ms, --cache-mb and tenant settings must be integers");
+            return;
+        }
+
+        LinearAlgebraEngine engine = new LinearAlgebraEngine(ExecutorConfig.platform(numberOfThreads).withThreadMode(threadMode), VectorFormat.DEFAULT);
+        if (cacheMegabytes > 0 || cacheDir != null) {
+            // a warm server is where repeated subexpressions pay off most, so the defaults are generous
+            long memoryBytes = (cacheMegabytes > 0 ? cacheMegabytes : DEFAULT_CACHE_MB) * 1024 * 1024;
+            engine.setResultCache(cacheDir == null ? new ResultCache(memoryBytes, ResultCache.Eviction.LRU)
+                    : new ResultCache(memoryBytes, ResultCache.Eviction.LRU, Path.of(cacheDir), DEFAULT_CACHE_DISK_MB * 1024 * 1024));
+        }
+        LaeServer server = new LaeServer(engine, port, maxJobs);
+        try {
+            server.setJobTimeout(jobTimeoutMillis);
+            for (String[] spec : tenantSpecs) {
+                int cap = spec.length == 3 ? Integer.parseInt(spec[2]) : tenantMaxTasks;
+                server.defineTenant(spec[0], Integer.parseInt(spec[1]), cap);
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            server.close();
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        server.start();
+        System.out.println("listening on 127.0.0.1:" + server.getPort());
+    }
+}
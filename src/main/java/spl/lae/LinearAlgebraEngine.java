@@ -4,95 +4,821 @@ import parser.*;
 import memory.*;
 import scheduling.*;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.List;
+import java.util.Map;
 
-public class LinearAlgebraEngine {
+public class LinearAlgebraEngine implements AutoCloseable {
 
-    private SharedMatrix leftMatrix = new SharedMatrix();
-    private SharedMatrix rightMatrix = new SharedMatrix();
-    private TiredExecutor executor;
+    private final TiredExecutor executor;
+    private final VectorFormat format;
+    private volatile boolean closed = false;
+    private int strassenThreshold = DEFAULT_STRASSEN_THRESHOLD;
+    private int strassenCutover = DEFAULT_STRASSEN_CUTOVER;
+    private final int numThreads;
+    private volatile ResultCache cache = null;
+    private volatile long memoryBudget = UNLIMITED_MEMORY;
+    private volatile Path spillDirectory = null;
+    private final AtomicLong peakLiveBytes = new AtomicLong();
+    private final AtomicLong spills = new AtomicLong();
+    private final AtomicLong spilledBytes = new AtomicLong();
+    private final AtomicLong faults = new AtomicLong();
+
+    public static final int DEFAULT_STRASSEN_THRESHOLD = 512;
+    public static final int DEFAULT_STRASSEN_CUTOVER = 128;
+    public static final long UNLIMITED_MEMORY = Long.MAX_VALUE;
 
     public LinearAlgebraEngine(int numThreads) {
-        this.executor = new TiredExecutor(numThreads);
+        this(numThreads, VectorFormat.DEFAULT);
+    }
+
+    /**
+     * With StorageMode.OFF_HEAP every leaf and intermediate result lives in off-heap vectors,
+     * and each one is released as soon as the node consuming it has been computed.
+     */
+    public LinearAlgebraEngine(int numThreads, StorageMode storageMode) {
+        this(numThreads, VectorFormat.of(storageMode));
+    }
+
+    /**
+     * A FLOAT32 format computes the whole run in single precision. With FLOAT64, nodes whose
+     * operands are all FLOAT32 (for example leaves tagged by the input file) still compute in FLOAT32.
+     */
+    public LinearAlgebraEngine(int numThreads, VectorFormat format) {
+        this(ExecutorConfig.platform(numThreads), format);
+    }
+
+    /**
+     * The executor settings choose the number of workers and whether tasks run on platform
+     * threads or virtual threads.
+     */
+    public LinearAlgebraEngine(ExecutorConfig executorConfig, VectorFormat format) {
+        this.executor = new TiredExecutor(executorConfig);
+        this.format = format;
+        this.numThreads = executorConfig.getMaxThreads(); // partitions are sized for the largest pool
     }
 
+    /**
+     * Square FLOAT64 multiplies of at least minSize use Strassen, recursing down to cutover
+     * before switching to the classical kernel. Integer.MAX_VALUE turns Strassen off.
+     */
+    public void setStrassen(int minSize, int cutover) {
+        if (minSize < 1 || cutover < 1) throw new IllegalArgumentException("Strassen sizes must be positive");
+        this.strassenThreshold = minSize;
+        this.strassenCutover = cutover;
+    }
+
+    /**
+     * Evaluates one computation tree. The engine is not shut down afterwards, so it can be
+     * reused for further runs, and several threads may call run concurrently on different trees:
+     * every call keeps its operands in its own EvaluationContext and only the executor is shared.
+     */
     public ComputationNode run(ComputationNode computationRoot) {
+        return run(computationRoot, CancellationToken.none());
+    }
+
+    /**
+     * Like run(ComputationNode), stopping once the token is cancelled or its deadline passes.
+     * The token is checked before every node, at every task and chunk boundary, and per row or
+     * tile inside the kernels that run as one long task per thread (column and inner-dimension
+     * partitions, Strassen), so the run ends with a CancellationException shortly after; the
+     * engine stays usable for further runs.
+     */
+    public ComputationNode run(ComputationNode computationRoot, CancellationToken token) {
+        return run(computationRoot, token, Tenant.of("run"));
+    }
+
+    /**
+     * Like run(ComputationNode, CancellationToken), queueing the run's tasks as the tenant's.
+     * Runs without a tenant each get one of their own, so concurrent runs take turns on the
+     * workers; runs that share a tenant share its turn and its concurrency cap.
+     */
+    public ComputationNode run(ComputationNode computationRoot, CancellationToken token, Tenant tenant) {
         // TODO: resolve computation tree step by step until final matrix is produced
-        
+        if(closed) throw new IllegalStateException("The engine has been closed");
+        if(token == null) throw new IllegalArgumentException("token is null");
+        if(tenant == null) throw new IllegalArgumentException("tenant is null");
+        EvaluationContext context = new EvaluationContext(format, token, tenant);
+        ResultCache cache = this.cache;
+        MemoryGovernor governor = null;
         try{
+            computationRoot.fuseMultiplyAdd();
+            Map<ComputationNode, String> keys = null;
+            if(cache != null) {
+                keys = ResultCache.keys(computationRoot, cacheSettings());
+                resolveFromCache(cache, computationRoot, keys);
+            }
+            analyzeLeaves(computationRoot);
+            if(format.getStorageMode() == StorageMode.OFF_HEAP) {
+                moveLeavesOffHeap(computationRoot);
+            }
+            if(memoryBudget != UNLIMITED_MEMORY) {
+                governor = new MemoryGovernor(memoryBudget, spillDirectory, format, computationRoot);
+            }
             while(true){
                 if(computationRoot.getNodeType() == ComputationNodeType.MATRIX){
                     return computationRoot;
                 }
                 computationRoot.associativeNesting();
-                ComputationNode temp = computationRoot.findResolvable();
-                loadAndCompute(temp);
-                temp.resolve(leftMatrix.readRowMajor());
+                ComputationNode temp = governor == null ? computationRoot.findResolvable() : governor.next(computationRoot);
+                token.throwIfCancelled();
+                List<ComputationNode> operands = governor == null ? null : new ArrayList<>(temp.getChildren());
+                if(governor != null) governor.beforeCompute(temp);
+                loadAndCompute(context, temp);
+                resolveWithResult(context, temp);
+                if(governor != null) governor.afterCompute(operands, temp);
+                if(keys != null && keys.containsKey(temp)) {
+                    cache.put(keys.get(temp), temp);
+                }
             }
-    }
+        }
+        catch(CancellationException e) {
+            throw e;
+        }
         catch(Exception e) {
             throw new IllegalArgumentException(e);
         }
         finally {
-            try {
-                executor.shutdown();
-            }
-            catch(Exception e) {
-                throw new IllegalArgumentException(e);
+            if(governor != null) {
+                peakLiveBytes.accumulateAndGet(governor.getPeakBytes(), Math::max);
+                spills.addAndGet(governor.getSpills());
+                spilledBytes.addAndGet(governor.getSpilledBytes());
+                faults.addAndGet(governor.getFaults());
             }
-            
         }
+    }
+
+    /**
+     * Keeps the matrices each run holds alive, its leaves and the intermediates it has computed
+     * but not yet consumed, within bytes: intermediates beyond the budget are spilled to
+     * memory-mapped temp files in spillDirectory and read back when consumed, and the run
+     * computes the subtrees needing the most memory first. The budget applies to every run
+     * separately; leaves alone may exceed it. UNLIMITED_MEMORY turns the governor off.
+     */
+    public void setMemoryBudget(long bytes, Path spillDirectory) {
+        if(bytes < 1) throw new IllegalArgumentException("the memory budget must be positive");
+        if(spillDirectory == null) throw new IllegalArgumentException("spillDirectory cannot be null");
+        this.spillDirectory = spillDirectory;
+        this.memoryBudget = bytes;
+    }
+
+    /** Like setMemoryBudget(long, Path), spilling to the system temp directory. */
+    public void setMemoryBudget(long bytes) {
+        setMemoryBudget(bytes, Path.of(System.getProperty("java.io.tmpdir")));
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Runs consult the cache before computing and store every node they compute in it. Results
+     * are only shared between engines computing with the same precision, accumulation and
+     * Strassen settings. null turns caching off.
+     */
+    public void setResultCache(ResultCache cache) {
+        this.cache = cache;
+    }
+
+    public ResultCache getResultCache() {
+        return cache;
+    }
+
+    // Settings that change the values an engine computes, so they are part of every cache key
+    private String cacheSettings() {
+        return format.getPrecision() + "/" + format.getAccumulation() + "/" + strassenThreshold + "/" + strassenCutover;
+    }
+
+    // Top-down, so a cached subtree is taken whole without looking up its parts
+    private void resolveFromCache(ResultCache cache, ComputationNode node, Map<ComputationNode, String> keys) {
+        if(node.getNodeType() == ComputationNodeType.MATRIX || cache.resolve(node, keys.get(node))) {
+            return;
         }
+        for(ComputationNode child : node.getChildren()) {
+            resolveFromCache(cache, child, keys);
+        }
+    }
+
+    /**
+     * Shuts the worker pool down once the runs in progress have finished.
+     * Calling run on a closed engine throws IllegalStateException.
+     */
+    @Override
+    public void close() {
+        if(closed) return;
+        closed = true;
+        try {
+            executor.shutdown();
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
 
     public void loadAndCompute(ComputationNode node) {
+        EvaluationContext context = new EvaluationContext(format);
+        loadAndCompute(context, node);
+        resolveWithResult(context, node);
+    }
+
+    public void loadAndCompute(EvaluationContext context, ComputationNode node) {
         // TODO: load operand matrices
         // TODO: create compute tasks & submit tasks to executor
         if(node == null) throw new IllegalArgumentException("node is null");
         ComputationNodeType type = node.getNodeType();
+        VectorFormat nodeFormat = formatOf(node);
+        if(type == ComputationNodeType.MULTIPLY && !node.isBooleanSemiring() && multiplyStructured(context, node, nodeFormat)) {
+            return;
+        }
+        if(type == ComputationNodeType.MULTIPLY && (node.isBooleanSemiring() || bothBitPacked(node))) {
+            multiplyBitMatrices(context, node, nodeFormat);
+            return;
+        }
+        if(type == ComputationNodeType.MULTIPLY && useStrassen(node, nodeFormat)) {
+            multiplyStrassen(context, node, nodeFormat);
+            return;
+        }
+        if(type == ComputationNodeType.MULTIPLY && multiplyPartitioned(context, node, nodeFormat)) {
+            return;
+        }
+        if(type == ComputationNodeType.POWER) {
+            power(context, node, nodeFormat);
+            return;
+        }
+        if(type == ComputationNodeType.MULTIPLY_ADD) {
+            multiplyAdd(context, node, nodeFormat);
+            return;
+        }
+        ComputationNode first = node.getChildren().get(0);
+        if(type == ComputationNodeType.NEGATE && first.hasKnownStructure()) {
+            context.resultStructure = first.getStructure().negated();
+        }
+        if(type == ComputationNodeType.TRANSPOSE && first.hasKnownStructure()) {
+            context.resultStructure = first.getStructure().transposed();
+        }
         if(type == ComputationNodeType.ADD || (type == ComputationNodeType.MULTIPLY)) {
-            leftMatrix.loadRowMajor(node.getChildren().get(0).getMatrix());
-            rightMatrix.loadRowMajor(node.getChildren().get(1).getMatrix());
+            context.leftMatrix = loadOperand(context, node.getChildren().get(0), nodeFormat);
+            context.rightMatrix = loadOperand(context, node.getChildren().get(1), nodeFormat);
         }
 
         else if(type == ComputationNodeType.NEGATE) {
-            leftMatrix.loadRowMajor(node.getChildren().get(0).getMatrix());
+            context.leftMatrix = loadOperand(context, node.getChildren().get(0), nodeFormat);
         }
 
         else {
-            leftMatrix.loadColumnMajor(node.getChildren().get(0).getMatrix());
+            ComputationNode operand = node.getChildren().get(0);
+            context.leftMatrix = SharedMatrix.empty(nodeFormat);
+            SharedMatrix stored = operand.getStoredMatrix();
+            context.leftMatrix.loadColumnMajor(stored != null ? stored.readRowMajor(copier(context)) : operand.getMatrix(), copier(context));
+            operand.release();
         }
 
         if(type == ComputationNodeType.ADD) {
-            if(leftMatrix.length() != rightMatrix.length()) throw new IllegalArgumentException("The matrices have different length");
-            List<Runnable> task = createAddTasks();
-            executor.submitAll(task);
+            if(context.leftMatrix.length() != context.rightMatrix.length()) throw new IllegalArgumentException("The matrices have different length");
+            List<Runnable> task = createAddTasks(context);
+            executor.submitAll(task, context.token, context.tenant, context.operandBytes());
         }
 
         if(type == ComputationNodeType.MULTIPLY) {
-            if(leftMatrix.get(0).length() != rightMatrix.length()) throw new IllegalArgumentException("The left matrix number of columns is not equal to the right matrix number of rows");
-            executor.submitAll(createMultiplyTasks());
+            if(context.leftMatrix.get(0).length() != context.rightMatrix.length()) throw new IllegalArgumentException("The left matrix number of columns is not equal to the right matrix number of rows");
+            // rows are claimed in chunks sized by each worker's measured speed
+            // the right operand is read once for every row, not once per row
+            SharedMatrix left = context.leftMatrix;
+            double[][] right = context.rightMatrix.readRowMajor(copier(context));
+            executor.submitChunks(left.length(), (from, to) -> {
+                for(int row = from; row < to; row++) {
+                    left.get(row).vecMatMul(right, 0, Integer.MAX_VALUE);
+                }
+            }, context.token, context.tenant, context.operandBytes());
         }
 
         if(type == ComputationNodeType.NEGATE) {
-            executor.submitAll(createNegateTasks());
+            executor.submitAll(createNegateTasks(context), context.token, context.tenant, context.operandBytes());
         }
 
         if(type == ComputationNodeType.TRANSPOSE) {
-            executor.submitAll(createTransposeTasks());
+            executor.submitAll(createTransposeTasks(context), context.token, context.tenant, context.operandBytes());
         }
         
     }
 
-    public List<Runnable> createAddTasks() {
+    /**
+     * Returns a row-major SharedMatrix with the operand's values.
+     * An operand that is already stored row-major in the node's format is used in place, so its vectors
+     * become the result; a spilled operand is read back into the node's format.
+     */
+    private SharedMatrix loadOperand(EvaluationContext context, ComputationNode operand, VectorFormat nodeFormat) {
+        SharedMatrix stored = operand.getStoredMatrix();
+        if(stored != null && stored.length() > 0 && stored.getOrientation() == VectorOrientation.ROW_MAJOR
+                && stored.getFormat().getPrecision() == nodeFormat.getPrecision() && stored.getStorageMode() == nodeFormat.getStorageMode()) {
+            return stored;
+        }
+        SharedMatrix loaded = SharedMatrix.empty(nodeFormat);
+        loaded.loadRowMajor(stored != null ? stored.readRowMajor(copier(context)) : operand.getMatrix(), copier(context));
+        operand.release();
+        return loaded;
+    }
+
+    // Runs the blocks of a large load, transpose or readback on the workers, as the run's tasks
+    private Consumer<List<Runnable>> copier(EvaluationContext context) {
+        return tasks -> executor.submitAll(tasks, context.token, context.tenant);
+    }
+
+    // Every path leaves the context empty, so no later node sees, or releases, this node's matrices
+    private void resolveWithResult(EvaluationContext context, ComputationNode node) {
+        MatrixStructure structure = context.resultStructure;
+        context.resultStructure = null;
+        SharedMatrix left = context.leftMatrix;
+        SharedMatrix right = context.rightMatrix;
+        context.leftMatrix = SharedMatrix.empty(format);
+        context.rightMatrix = SharedMatrix.empty(format);
+        if(context.bitResult != null) {
+            node.resolve(context.bitResult);
+            context.bitResult = null;
+            return;
+        }
+        Precision precision = left.getFormat().getPrecision();
+        if(format.getStorageMode() == StorageMode.HEAP) {
+            node.resolve(left.readRowMajor(copier(context)));
+            node.setPrecision(precision);
+            node.setStructure(structure);
+            return;
+        }
+        // the right operand is dead once the node is computed, the left one became the result
+        right.release();
+        SharedMatrix result = left;
+        if(result.length() > 0 && result.getOrientation() != VectorOrientation.ROW_MAJOR) {
+            result = new SharedMatrix(left.readRowMajor(copier(context)), left.getFormat());
+            left.release();
+        }
+        node.resolve(result);
+        node.setPrecision(precision);
+        node.setStructure(structure);
+    }
+
+    /**
+     * The run-level format, narrowed to FLOAT32 when every operand of the node is FLOAT32.
+     */
+    private VectorFormat formatOf(ComputationNode node) {
+        if(format.getPrecision() == Precision.FLOAT32 || node.getChildren() == null) {
+            return format;
+        }
+        for(ComputationNode child : node.getChildren()) {
+            if(child.getPrecision() != Precision.FLOAT32) {
+                return format;
+            }
+        }
+        return format.withPrecision(Precision.FLOAT32);
+    }
+
+    private void moveLeavesOffHeap(ComputationNode node) {
+        if(node.getNodeType() == ComputationNodeType.MATRIX) {
+            if(node.getStoredMatrix() == null && node.getBitMatrix() == null) {
+                Precision precision = format.getPrecision() == Precision.FLOAT32 ? Precision.FLOAT32 : node.getPrecision();
+                MatrixStructure structure = node.getStructure();
+                node.resolve(new SharedMatrix(node.getMatrix(), format.withPrecision(precision)));
+                node.setPrecision(precision);
+                node.setStructure(structure);
+            }
+            return;
+        }
+        for(ComputationNode child : node.getChildren()) {
+            moveLeavesOffHeap(child);
+        }
+    }
+
+    private void analyzeLeaves(ComputationNode node) {
+        if(node.getNodeType() == ComputationNodeType.MATRIX) {
+            node.getStructure();
+            return;
+        }
+        for(ComputationNode child : node.getChildren()) {
+            analyzeLeaves(child);
+        }
+    }
+
+    /**
+     * Multiplies using the zero pattern of the operands, when one is known to help:
+     * identity is a no-op, a diagonal scales rows or columns, and a banded or triangular
+     * left operand only visits the columns inside its band. Returns false if no shortcut applies.
+     */
+    private boolean multiplyStructured(EvaluationContext context, ComputationNode node, VectorFormat nodeFormat) {
+        ComputationNode a = node.getChildren().get(0);
+        ComputationNode b = node.getChildren().get(1);
+        MatrixStructure left = a.getStructure();
+        MatrixStructure right = b.getStructure();
+
+        if(left.getKind() == MatrixStructure.Kind.IDENTITY) {
+            context.leftMatrix = loadOperand(context, b, nodeFormat);
+            checkInnerDimension(left.getSize(), context.leftMatrix.length());
+            a.release();
+            context.resultStructure = right;
+            return true;
+        }
+        if(right.getKind() == MatrixStructure.Kind.IDENTITY) {
+            context.leftMatrix = loadOperand(context, a, nodeFormat);
+            checkInnerDimension(context.leftMatrix.get(0).length(), right.getSize());
+            b.release();
+            context.resultStructure = left;
+            return true;
+        }
+        if(left.getKind() == MatrixStructure.Kind.DIAGONAL) {
+            double[] factors = diagonalOf(a);
+            context.leftMatrix = loadOperand(context, b, nodeFormat);
+            checkInnerDimension(factors.length, context.leftMatrix.length());
+            executor.submitAll(createRowScaleTasks(context, factors), context.token, context.tenant, context.operandBytes());
+            return true;
+        }
+        if(right.getKind() == MatrixStructure.Kind.DIAGONAL) {
+            double[] factors = diagonalOf(b);
+            context.leftMatrix = loadOperand(context, a, nodeFormat);
+            checkInnerDimension(context.leftMatrix.get(0).length(), factors.length);
+            executor.submitAll(createColumnScaleTasks(context, factors), context.token, context.tenant, context.operandBytes());
+            return true;
+        }
+        if(left.isBanded()) {
+            context.leftMatrix = loadOperand(context, a, nodeFormat);
+            context.rightMatrix = loadOperand(context, b, nodeFormat);
+            checkInnerDimension(left.getSize(), context.rightMatrix.length());
+            executor.submitAll(createBandedMultiplyTasks(context, left), context.token, context.tenant, context.operandBytes());
+            return true;
+        }
+        return false;
+    }
+
+    private void checkInnerDimension(int leftColumns, int rightRows) {
+        if(leftColumns != rightRows) throw new IllegalArgumentException("The left matrix number of columns is not equal to the right matrix number of rows");
+    }
+
+    private double[] diagonalOf(ComputationNode operand) {
+        double[][] values = operand.getMatrix();
+        double[] diagonal = new double[values.length];
+        for(int i = 0; i < values.length; i++) {
+            diagonal[i] = values[i][i];
+        }
+        operand.release();
+        return diagonal;
+    }
+
+    public List<Runnable> createRowScaleTasks(EvaluationContext context, double[] factors) {
+        List<Runnable> ret = new LinkedList<>();
+        for(int i = 0; i < context.leftMatrix.length(); i++){
+            final int row = i;
+            ret.add(() -> context.leftMatrix.get(row).scale(factors[row]));
+        }
+        return ret;
+    }
+
+    public List<Runnable> createColumnScaleTasks(EvaluationContext context, double[] factors) {
+        List<Runnable> ret = new LinkedList<>();
+        for(int i = 0; i < context.leftMatrix.length(); i++){
+            final int row = i;
+            ret.add(() -> context.leftMatrix.get(row).scale(factors));
+        }
+        return ret;
+    }
+
+    public List<Runnable> createBandedMultiplyTasks(EvaluationContext context, MatrixStructure band) {
         List<Runnable> ret = new LinkedList<>();
-        int length = rightMatrix.length();
+        double[][] right = context.rightMatrix.readRowMajor(copier(context));
+        for(int i = 0; i < context.leftMatrix.length(); i++){
+            final int row = i;
+            ret.add(() -> context.leftMatrix.get(row).vecMatMul(right, band.firstColumn(row), band.lastColumn(row)));
+        }
+        return ret;
+    }
+
+    private boolean useStrassen(ComputationNode node, VectorFormat nodeFormat) {
+        if(node.isBooleanSemiring() || nodeFormat.getPrecision() != Precision.FLOAT64) {
+            return false;
+        }
+        ComputationNode a = node.getChildren().get(0);
+        ComputationNode b = node.getChildren().get(1);
+        int n = a.getRowCount();
+        return n >= strassenThreshold && a.getColumnCount() == n && b.getRowCount() == n && b.getColumnCount() == n;
+    }
+
+    private void multiplyStrassen(EvaluationContext context, ComputationNode node, VectorFormat nodeFormat) {
+        ComputationNode a = node.getChildren().get(0);
+        ComputationNode b = node.getChildren().get(1);
+        double[][] product = new StrassenMultiplier(executor, strassenCutover, numThreads, context.token, context.tenant).multiply(a.getMatrix(), b.getMatrix());
+        a.release();
+        b.release();
+        context.leftMatrix = new SharedMatrix(product, nodeFormat);
+    }
+
+    /**
+     * Multiplies shapes with too few rows to keep every worker busy (e.g. 4 x 100000 * 100000 x 4)
+     * by result columns or by slices of the inner dimension. Returns false when the row partition is best.
+     * The inner partition sums each entry in a different order than the row kernel, so FLOAT64
+     * results may differ from it in the last bits; FLOAT32 nodes always keep the row kernel and its accumulation policy.
+     */
+    private boolean multiplyPartitioned(EvaluationContext context, ComputationNode node, VectorFormat nodeFormat) {
+        if(node.isBooleanSemiring() || nodeFormat.getPrecision() != Precision.FLOAT64) {
+            return false;
+        }
+        ComputationNode a = node.getChildren().get(0);
+        ComputationNode b = node.getChildren().get(1);
+        int rows = a.getRowCount();
+        int inner = a.getColumnCount();
+        int columns = b.getColumnCount();
+        if(inner != b.getRowCount()) {
+            return false; // the row kernel reports the mismatch
+        }
+        MultiplyPartition partition = MultiplyPartition.choose(rows, inner, columns, numThreads);
+        if(partition == MultiplyPartition.ROWS) {
+            return false;
+        }
+        double[][] left = a.getMatrix();
+        double[][] right = b.getMatrix();
+        a.release();
+        b.release();
+        double[][] result = new double[rows][columns];
+        if(partition == MultiplyPartition.COLUMNS) {
+            executor.submitAll(createColumnMultiplyTasks(left, right, result, context.token), context.token, context.tenant, context.operandBytes());
+        }
+        else {
+            int chunks = Math.min(numThreads, inner / MultiplyPartition.MIN_INNER_CHUNK);
+            double[][][] partials = new double[chunks][][];
+            executor.submitAll(createSplitKMultiplyTasks(left, right, partials, context.token), context.token, context.tenant, context.operandBytes());
+            executor.submitAll(createReduceTasks(partials, result), context.token, context.tenant, context.operandBytes());
+        }
+        context.leftMatrix = new SharedMatrix(result, nodeFormat);
+        return true;
+    }
+
+    // every task owns a contiguous block of result columns and checks the token every row
+    public List<Runnable> createColumnMultiplyTasks(double[][] left, double[][] right, double[][] result, CancellationToken token) {
+        List<Runnable> ret = new LinkedList<>();
+        int columns = result[0].length;
+        int blocks = Math.min(numThreads, columns);
+        for(int t = 0; t < blocks; t++){
+            final int from = (int) ((long) columns * t / blocks);
+            final int to = (int) ((long) columns * (t + 1) / blocks);
+            ret.add(() -> {
+                for(int i = 0; i < left.length; i++) {
+                    token.throwIfCancelled();
+                    double[] resultRow = result[i];
+                    for(int k = 0; k < right.length; k++) {
+                        double aik = left[i][k];
+                        double[] rightRow = right[k];
+                        for(int j = from; j < to; j++) {
+                            resultRow[j] += aik * rightRow[j];
+                        }
+                    }
+                }
+            });
+        }
+        return ret;
+    }
+
+    // task t multiplies the t-th slice of the inner dimension into its own partial result, checking the token every row
+    public List<Runnable> createSplitKMultiplyTasks(double[][] left, double[][] right, double[][][] partials, CancellationToken token) {
+        List<Runnable> ret = new LinkedList<>();
+        int inner = right.length;
+        int columns = right[0].length;
+        for(int t = 0; t < partials.length; t++){
+            final int slice = t;
+            final int from = (int) ((long) inner * t / partials.length);
+            final int to = (int) ((long) inner * (t + 1) / partials.length);
+            ret.add(() -> {
+                double[][] partial = new double[left.length][columns];
+                for(int i = 0; i < left.length; i++) {
+                    token.throwIfCancelled();
+                    for(int k = from; k < to; k++) {
+                        double aik = left[i][k];
+                        double[] rightRow = right[k];
+                        for(int j = 0; j < columns; j++) {
+                            partial[i][j] += aik * rightRow[j];
+                        }
+                    }
+                }
+                partials[slice] = partial;
+            });
+        }
+        return ret;
+    }
+
+    // every task sums the partial products over its own range of result entries
+    public List<Runnable> createReduceTasks(double[][][] partials, double[][] result) {
+        List<Runnable> ret = new LinkedList<>();
+        int columns = result[0].length;
+        int entries = result.length * columns;
+        int tasks = Math.min(numThreads, entries);
+        for(int t = 0; t < tasks; t++){
+            final int from = (int) ((long) entries * t / tasks);
+            final int to = (int) ((long) entries * (t + 1) / tasks);
+            ret.add(() -> {
+                for(int e = from; e < to; e++) {
+                    int i = e / columns;
+                    int j = e % columns;
+                    double sum = 0;
+                    for(double[][] partial : partials) {
+                        sum += partial[i][j];
+                    }
+                    result[i][j] = sum;
+                }
+            });
+        }
+        return ret;
+    }
+
+    /**
+     * Raises a square matrix to the node's exponent by repeated squaring: O(log k) multiplies,
+     * each one going through the regular multiply paths (structure, Strassen, partitioning, rows).
+     */
+    private void power(EvaluationContext context, ComputationNode node, VectorFormat nodeFormat) {
+        if(node.getChildren().size() != 1) throw new IllegalArgumentException("Power takes exactly one operand");
+        ComputationNode operand = node.getChildren().get(0);
+        if(operand.getRowCount() != operand.getColumnCount()) throw new IllegalArgumentException("Only square matrices can be raised to a power");
+
+        int k = node.getExponent();
+        double[][] base = operand.getMatrix();
+        operand.release();
+        double[][] result = null;
+        while(k > 0) {
+            if((k & 1) == 1) {
+                result = result == null ? base : multiplyMatrices(context, result, base, nodeFormat);
+            }
+            k >>= 1;
+            if(k > 0) {
+                base = multiplyMatrices(context, base, base, nodeFormat);
+            }
+        }
+        if(result == null) {
+            result = new double[base.length][base.length];
+            for(int i = 0; i < base.length; i++) {
+                result[i][i] = 1.0;
+            }
+        }
+        context.leftMatrix = new SharedMatrix(result, nodeFormat);
+    }
+
+    /*
+     * Multiplies through loadAndCompute on a throwaway node. Operands are copied, since some kernels work in place.
+     * The context starts empty, so the matrices released afterwards are only the ones this multiply loaded.
+     */
+    private double[][] multiplyMatrices(EvaluationContext context, double[][] x, double[][] y, VectorFormat nodeFormat) {
+        ComputationNode left = new ComputationNode(copyOf(x));
+        ComputationNode right = new ComputationNode(copyOf(y));
+        left.setPrecision(nodeFormat.getPrecision());
+        right.setPrecision(nodeFormat.getPrecision());
+        context.leftMatrix = SharedMatrix.empty(nodeFormat);
+        context.rightMatrix = SharedMatrix.empty(nodeFormat);
+        loadAndCompute(context, new ComputationNode(ComputationNodeType.MULTIPLY, List.of(left, right)));
+        context.resultStructure = null;
+        double[][] product = context.leftMatrix.readRowMajor(copier(context));
+        context.leftMatrix.release();
+        context.rightMatrix.release();
+        context.leftMatrix = SharedMatrix.empty(nodeFormat);
+        context.rightMatrix = SharedMatrix.empty(nodeFormat);
+        return product;
+    }
+
+    private static double[][] copyOf(double[][] matrix) {
+        double[][] copy = new double[matrix.length][];
+        for(int i = 0; i < matrix.length; i++) {
+            copy[i] = matrix[i].clone();
+        }
+        return copy;
+    }
+
+    /**
+     * alpha * A * B + beta * C. The fused row kernel accumulates each product row straight into C's vector.
+     * When A or B has a structure shortcut, or the shapes favour Strassen or another partition,
+     * the product is computed through those paths first and then added into C in one pass.
+     */
+    private void multiplyAdd(EvaluationContext context, ComputationNode node, VectorFormat nodeFormat) {
+        ComputationNode a = node.getChildren().get(0);
+        ComputationNode b = node.getChildren().get(1);
+        ComputationNode c = node.getChildren().get(2);
+        double alpha = node.getAlpha();
+        double beta = node.getBeta();
+
+        if(a.getRowCount() != c.getRowCount() || b.getColumnCount() != c.getColumnCount()) {
+            throw new IllegalArgumentException("The product and the added matrix have different dimensions");
+        }
+        if(fusionPays(a, b, nodeFormat)) {
+            SharedMatrix rows = loadOperand(context, a, nodeFormat);
+            context.rightMatrix = loadOperand(context, b, nodeFormat);
+            context.leftMatrix = loadOperand(context, c, nodeFormat);
+            checkInnerDimension(rows.get(0).length(), context.rightMatrix.length());
+            executor.submitAll(createMultiplyAddTasks(context, rows, alpha, beta), context.token, context.tenant, context.operandBytes());
+            if(rows != context.leftMatrix) {
+                rows.release();
+            }
+            return;
+        }
+        double[][] product = multiplyMatrices(context, a.getMatrix(), b.getMatrix(), nodeFormat);
+        a.release();
+        b.release();
+        SharedMatrix productMatrix = new SharedMatrix(product, nodeFormat);
+        context.leftMatrix = loadOperand(context, c, nodeFormat);
+        executor.submitAll(createScaleAddTasks(context, alpha, productMatrix, beta), context.token, context.tenant, context.operandBytes());
+    }
+
+    private boolean fusionPays(ComputationNode a, ComputationNode b, VectorFormat nodeFormat) {
+        if(a.getStructure().getKind() != MatrixStructure.Kind.GENERAL || b.getStructure().getKind() != MatrixStructure.Kind.GENERAL) {
+            return false;
+        }
+        if(nodeFormat.getPrecision() != Precision.FLOAT64) {
+            return true; // the other paths keep FLOAT32 on the row kernel as well
+        }
+        int n = a.getRowCount();
+        boolean square = a.getColumnCount() == n && b.getRowCount() == n && b.getColumnCount() == n;
+        if(square && n >= strassenThreshold) {
+            return false;
+        }
+        return MultiplyPartition.choose(n, a.getColumnCount(), b.getColumnCount(), numThreads) == MultiplyPartition.ROWS;
+    }
+
+    public List<Runnable> createMultiplyAddTasks(EvaluationContext context, SharedMatrix rows, double alpha, double beta) {
+        List<Runnable> ret = new LinkedList<>();
+        double[][] right = context.rightMatrix.readRowMajor(copier(context));
+        for(int i = 0; i < context.leftMatrix.length(); i++){
+            final int row = i;
+            ret.add(() -> context.leftMatrix.get(row).mulAdd(alpha, rows.get(row), right, beta));
+        }
+        return ret;
+    }
+
+    public List<Runnable> createScaleAddTasks(EvaluationContext context, double alpha, SharedMatrix product, double beta) {
+        List<Runnable> ret = new LinkedList<>();
+        for(int i = 0; i < context.leftMatrix.length(); i++){
+            final int row = i;
+            ret.add(() -> context.leftMatrix.get(row).scaleAdd(alpha, product.get(row), beta));
+        }
+        return ret;
+    }
+
+    private boolean bothBitPacked(ComputationNode node) {
+        return node.getChildren().get(0).getBitMatrix() != null && node.getChildren().get(1).getBitMatrix() != null;
+    }
+
+    /**
+     * Multiplies two 0/1 operands on their packed words. A boolean-semiring node stays packed
+     * (reachability), otherwise the result holds path counts and continues as a regular matrix.
+     */
+    private void multiplyBitMatrices(EvaluationContext context, ComputationNode node, VectorFormat nodeFormat) {
+        BitMatrix left = packedOperand(node.getChildren().get(0));
+        BitMatrix right = packedOperand(node.getChildren().get(1));
+        if(left.cols() != right.rows()) throw new IllegalArgumentException("The left matrix number of columns is not equal to the right matrix number of rows");
+
+        if(node.isBooleanSemiring()) {
+            long[][] rows = new long[left.rows()][BitMatrix.wordCount(right.cols())];
+            executor.submitAll(createBooleanMultiplyTasks(left, right, rows), context.token, context.tenant, context.operandBytes());
+            context.bitResult = BitMatrix.fromRows(rows, right.cols());
+        }
+        else {
+            double[][] counts = new double[left.rows()][right.cols()];
+            executor.submitAll(createCountMultiplyTasks(left, right.transpose(), counts), context.token, context.tenant, context.operandBytes());
+            context.leftMatrix = new SharedMatrix(counts, nodeFormat);
+        }
+    }
+
+    private BitMatrix packedOperand(ComputationNode operand) {
+        if(operand.getBitMatrix() != null) {
+            return operand.getBitMatrix();
+        }
+        double[][] values = operand.getMatrix();
+        if(!BitMatrix.isBinary(values)) throw new IllegalArgumentException("Boolean semiring multiplication needs 0/1 operands");
+        operand.release();
+        return BitMatrix.fromDense(values);
+    }
+
+    public List<Runnable> createBooleanMultiplyTasks(BitMatrix left, BitMatrix right, long[][] out) {
+        List<Runnable> ret = new LinkedList<>();
+        for(int i = 0; i < left.rows(); i++){
+            final int row = i;
+            ret.add(() -> left.booleanMultiplyRow(row, right, out[row]));
+        }
+        return ret;
+    }
+
+    public List<Runnable> createCountMultiplyTasks(BitMatrix left, BitMatrix rightTransposed, double[][] out) {
+        List<Runnable> ret = new LinkedList<>();
+        for(int i = 0; i < left.rows(); i++){
+            final int row = i;
+            ret.add(() -> left.countMultiplyRow(row, rightTransposed, out[row]));
+        }
+        return ret;
+    }
+
+    public List<Runnable> createAddTasks(EvaluationContext context) {
+        List<Runnable> ret = new LinkedList<>();
+        int length = context.rightMatrix.length();
         
         for(int i = 0; i <length; i++){
             final int row = i; // Local variable i is required to be final
             Runnable task = () -> {
                 try {
-                    leftMatrix.get(row).add(rightMatrix.get(row));
+                    context.leftMatrix.get(row).add(context.rightMatrix.get(row));
                     ;
                     
                 } 
@@ -106,15 +832,16 @@ public class LinearAlgebraEngine {
         return ret;
     }
 
-    public List<Runnable> createMultiplyTasks() {
+    public List<Runnable> createMultiplyTasks(EvaluationContext context) {
         List<Runnable> ret = new LinkedList<>();
-        int length = leftMatrix.length();
+        int length = context.leftMatrix.length();
+        double[][] right = context.rightMatrix.readRowMajor(copier(context));
         
         for(int i = 0; i <length; i++){
             final int row = i; // Local variable i is required to be final
             Runnable task = () -> {
                 try {
-                    leftMatrix.get(row).vecMatMul(rightMatrix);
+                    context.leftMatrix.get(row).vecMatMul(right, 0, Integer.MAX_VALUE);
                 } 
                 catch(Exception e) {
                     throw new IllegalArgumentException(e);
@@ -126,15 +853,15 @@ public class LinearAlgebraEngine {
         return ret;
     }
 
-    public List<Runnable> createNegateTasks() {
+    public List<Runnable> createNegateTasks(EvaluationContext context) {
         List<Runnable> ret = new LinkedList<>();
-        int length = leftMatrix.length();
+        int length = context.leftMatrix.length();
         
         for(int i = 0; i <length; i++){
             final int row = i; // Local variable i is required to be final
             Runnable task = () -> {
                 try {
-                    leftMatrix.get(row).negate();
+                    context.leftMatrix.get(row).negate();
                     
                 } 
                 catch(Exception e) {
@@ -147,15 +874,15 @@ public class LinearAlgebraEngine {
         return ret;
     }
 
-    public List<Runnable> createTransposeTasks() {
+    public List<Runnable> createTransposeTasks(EvaluationContext context) {
         List<Runnable> ret = new LinkedList<>();
-        int length = leftMatrix.length();
+        int length = context.leftMatrix.length();
         
         for(int i = 0; i <length; i++){
             final int row = i; // Local variable i is required to be final
             Runnable task = () -> {
                 try {
-                    leftMatrix.get(row).transpose();
+                    context.leftMatrix.get(row).transpose();
                 } 
                 catch(Exception e) {
                     throw new IllegalArgumentException(e);
@@ -167,7 +894,16 @@ public class LinearAlgebraEngine {
         return ret;
     }
 
+    /** Lists the tenant in the worker report. */
+    public void registerTenant(Tenant tenant) {
+        executor.registerTenant(tenant);
+    }
+
     public String getWorkerReport() {
-        return executor.getWorkerReport();
+        ResultCache cache = this.cache;
+        String report = cache == null ? executor.getWorkerReport() : executor.getWorkerReport() + cache + "\n";
+        if(memoryBudget == UNLIMITED_MEMORY) return report;
+        return report + String.format("Memory: budget %d bytes, peak live %d bytes, spilled %d matrices (%d bytes), faulted in %d%n",
+                memoryBudget, peakLiveBytes.get(), spills.get(), spilledBytes.get(), faults.get());
     }
 }
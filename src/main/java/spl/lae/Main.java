@@ -1,12 +1,133 @@
 package spl.lae;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CancellationException;
 
+import memory.Accumulation;
+import memory.Precision;
+import memory.StorageMode;
+import memory.VectorFormat;
 import parser.*;
+import scheduling.CancellationToken;
+import scheduling.ExecutorConfig;
+import scheduling.HandoffMode;
+import scheduling.OverflowPolicy;
+import scheduling.ThreadMode;
 
 public class Main {
+    private static final int BATCH_QUEUE_CAPACITY = 4;
+    private static final long DEFAULT_CACHE_MB = 256;
+    private static final long DEFAULT_CACHE_DISK_MB = 4096;
+
     public static void main(String[] args) throws IOException {
-    if (args.length != 3) {
-        System.out.println("user input must be <number of threads> <path/to/input/file> <path/to/output/file>");
+    if (args.length < 3) {
+        System.out.println("user input must be <number of threads> <path/to/input/file> <path/to/output/file> [--off-heap] [--float32] [--accumulate=float|double] [--report-error] [--strassen=<min size>] [--batch] [--virtual-threads] [--spin-handoff] [--max-threads=<n>] [--keep-alive-ms=<ms>] [--timeout-ms=<ms>] [--max-queued-tasks=<n>] [--max-queued-mb=<mb>] [--overflow=block|caller-runs|reject] [--cache-mb=<mb>] [--cache-evict=lru|lfu] [--cache-dir=<dir>] [--cache-disk-mb=<mb>] [--memory-budget-mb=<mb>] [--spill-dir=<dir>]");
+        System.out.println("with --batch the input is a directory of .json files or a manifest of <input> <output> lines, and the output is a directory");
+        return;
+    }
+
+    StorageMode storageMode = StorageMode.HEAP;
+    Precision precision = Precision.FLOAT64;
+    Accumulation accumulation = Accumulation.DOUBLE;
+    boolean reportError = false;
+    boolean batch = false;
+    ThreadMode threadMode = ThreadMode.PLATFORM;
+    HandoffMode handoffMode = HandoffMode.QUEUE;
+    int maxThreads = 0; // 0: a fixed pool of <number of threads>
+    long keepAliveMillis = ExecutorConfig.DEFAULT_KEEP_ALIVE_MILLIS;
+    long timeoutMillis = 0; // 0: no deadline
+    int maxQueuedTasks = ExecutorConfig.UNBOUNDED_TASKS;
+    long maxQueuedBytes = ExecutorConfig.UNBOUNDED_BYTES;
+    OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+    long cacheMegabytes = 0; // 0: no result cache, unless a cache directory is given
+    ResultCache.Eviction cacheEviction = ResultCache.Eviction.LRU;
+    String cacheDir = null;
+    long cacheDiskMegabytes = DEFAULT_CACHE_DISK_MB;
+    long memoryBudget = LinearAlgebraEngine.UNLIMITED_MEMORY;
+    String spillDir = System.getProperty("java.io.tmpdir");
+    int strassenMinSize = LinearAlgebraEngine.DEFAULT_STRASSEN_THRESHOLD;
+    for (int i = 3; i < args.length; i++) {
+        if (args[i].equals("--off-heap")) {
+            storageMode = StorageMode.OFF_HEAP;
+        }
+        else if (args[i].equals("--float32")) {
+            precision = Precision.FLOAT32;
+        }
+        else if (args[i].equals("--accumulate=float")) {
+            accumulation = Accumulation.NATIVE;
+        }
+        else if (args[i].equals("--accumulate=double")) {
+            accumulation = Accumulation.DOUBLE;
+        }
+        else if (args[i].equals("--report-error")) {
+            reportError = true;
+        }
+        else if (args[i].equals("--virtual-threads")) {
+            threadMode = ThreadMode.VIRTUAL;
+        }
+        else if (args[i].equals("--spin-handoff")) {
+            handoffMode = HandoffMode.SPIN_PARK;
+        }
+        else if (args[i].equals("--batch")) {
+            batch = true;
+        }
+        else if (args[i].equals("--cache-evict=lru")) {
+            cacheEviction = ResultCache.Eviction.LRU;
+        }
+        else if (args[i].equals("--cache-evict=lfu")) {
+            cacheEviction = ResultCache.Eviction.LFU;
+        }
+        else if (args[i].startsWith("--cache-dir=")) {
+            cacheDir = args[i].substring("--cache-dir=".length());
+        }
+        else if (args[i].startsWith("--spill-dir=")) {
+            spillDir = args[i].substring("--spill-dir=".length());
+        }
+        else if (args[i].equals("--overflow=block")) {
+            overflowPolicy = OverflowPolicy.BLOCK;
+        }
+        else if (args[i].equals("--overflow=caller-runs")) {
+            overflowPolicy = OverflowPolicy.CALLER_RUNS;
+        }
+        else if (args[i].equals("--overflow=reject")) {
+            overflowPolicy = OverflowPolicy.REJECT;
+        }
+        else if (args[i].startsWith("--max-threads=") || args[i].startsWith("--keep-alive-ms=") || args[i].startsWith("--timeout-ms=")
+                || args[i].startsWith("--max-queued-tasks=") || args[i].startsWith("--max-queued-mb=")
+                || args[i].startsWith("--cache-mb=") || args[i].startsWith("--cache-disk-mb=") || args[i].startsWith("--memory-budget-mb=")) {
+            try {
+                long value = Long.parseLong(args[i].substring(args[i].indexOf('=') + 1));
+                if (args[i].startsWith("--max-threads=")) maxThreads = (int) value;
+                else if (args[i].startsWith("--keep-alive-ms=")) keepAliveMillis = value;
+                else if (args[i].startsWith("--max-queued-tasks=")) maxQueuedTasks = (int) value;
+                else if (args[i].startsWith("--max-queued-mb=")) maxQueuedBytes = value * 1024 * 1024;
+                else if (args[i].startsWith("--cache-mb=")) cacheMegabytes = value;
+                else if (args[i].startsWith("--cache-disk-mb=")) cacheDiskMegabytes = value;
+                else if (args[i].startsWith("--memory-budget-mb=")) memoryBudget = value * 1024 * 1024;
+                else timeoutMillis = value;
+            } catch (NumberFormatException e) {
+                System.out.println(args[i].substring(0, args[i].indexOf('=')) + " must be an integer");
+                return;
+            }
+        }
+        else if (args[i].startsWith("--strassen=")) {
+            try {
+                strassenMinSize = Integer.parseInt(args[i].substring("--strassen=".length()));
+            } catch (NumberFormatException e) {
+                System.out.println("--strassen must be an integer");
+                return;
+            }
+        }
+        else {
+            System.out.println("unknown option: " + args[i]);
+            return;
+        }
+    }
+
+    if (memoryBudget < 1) {
+        System.out.println("--memory-budget-mb must be positive");
         return;
     }
 
@@ -18,6 +139,34 @@ public class Main {
         return;
     }
 
+    ExecutorConfig executorConfig;
+    try {
+        executorConfig = (maxThreads > 0 ? ExecutorConfig.elastic(numberOfThreads, maxThreads, keepAliveMillis) : ExecutorConfig.platform(numberOfThreads))
+                .withThreadMode(threadMode).withHandoffMode(handoffMode)
+                .withQueueBound(maxQueuedTasks, maxQueuedBytes, overflowPolicy);
+    } catch (IllegalArgumentException e) {
+        System.out.println(e.getMessage());
+        return;
+    }
+
+    ResultCache cache = null;
+    if (cacheMegabytes > 0 || cacheDir != null) {
+        long memoryBytes = (cacheMegabytes > 0 ? cacheMegabytes : DEFAULT_CACHE_MB) * 1024 * 1024;
+        try {
+            cache = cacheDir == null ? new ResultCache(memoryBytes, cacheEviction)
+                    : new ResultCache(memoryBytes, cacheEviction, Path.of(cacheDir), cacheDiskMegabytes * 1024 * 1024);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+    }
+
+    if (batch) {
+        runBatch(args[1], args[2], executorConfig, VectorFormat.of(storageMode, precision, accumulation), strassenMinSize, cache,
+                memoryBudget, Path.of(spillDir));
+        return;
+    }
+
     ComputationNode computationRoot = null;
 
     try {
@@ -30,12 +179,66 @@ public class Main {
       return;
     }
 
-    LinearAlgebraEngine LAE = new LinearAlgebraEngine(numberOfThreads);
+    ComputationNode referenceRoot = reportError ? computationRoot.deepCopy() : null;
+    LinearAlgebraEngine LAE = new LinearAlgebraEngine(executorConfig, VectorFormat.of(storageMode, precision, accumulation));
+    LAE.setStrassen(strassenMinSize, LinearAlgebraEngine.DEFAULT_STRASSEN_CUTOVER);
+    LAE.setResultCache(cache);
+    if (memoryBudget != LinearAlgebraEngine.UNLIMITED_MEMORY) {
+        LAE.setMemoryBudget(memoryBudget, Path.of(spillDir));
+    }
 
-    double[][] matrix = LAE.run(computationRoot).getMatrix();
+    CancellationToken token = timeoutMillis > 0 ? CancellationToken.withTimeout(timeoutMillis) : CancellationToken.none();
+    double[][] matrix;
+    try {
+      matrix = LAE.run(computationRoot, token).getMatrix();
+    }
+    catch (CancellationException e) {
+      OutputWriter.write(e.getMessage(), args[2]);
+      return;
+    }
+    catch (IllegalArgumentException e) {
+      // run() wraps failures in IllegalArgumentException; the cause carries the useful message
+      Throwable cause = e.getCause() != null ? e.getCause() : e;
+      OutputWriter.write(cause.getMessage() != null ? cause.getMessage() : cause.toString(), args[2]);
+      return;
+    }
+    finally {
+      LAE.close();
+    }
     System.out.println("--- Worker Statistics Report ---");
     System.out.println(LAE.getWorkerReport());
+    if (referenceRoot != null) {
+        System.out.println("--- Precision Report ---");
+        System.out.println(PrecisionReport.against(matrix, referenceRoot, numberOfThreads));
+    }
     OutputWriter.write(matrix, args[2]);
 
 }
-}
\ No newline at end of file
+
+    private static void runBatch(String inputs, String outputDir, ExecutorConfig executorConfig, VectorFormat format, int strassenMinSize,
+                                 ResultCache cache, long memoryBudget, Path spillDir) throws IOException {
+        List<BatchRunner.Job> jobs = BatchRunner.listJobs(Path.of(inputs), Path.of(outputDir));
+        Files.createDirectories(Path.of(outputDir));
+        LinearAlgebraEngine LAE = new LinearAlgebraEngine(executorConfig, format);
+        LAE.setStrassen(strassenMinSize, LinearAlgebraEngine.DEFAULT_STRASSEN_CUTOVER);
+        LAE.setResultCache(cache);
+        if (memoryBudget != LinearAlgebraEngine.UNLIMITED_MEMORY) {
+            LAE.setMemoryBudget(memoryBudget, spillDir);
+        }
+        BatchRunner.Report report;
+        try {
+            report = new BatchRunner(LAE, BATCH_QUEUE_CAPACITY).run(jobs);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        finally {
+            LAE.close();
+        }
+        System.out.println("--- Worker Statistics Report ---");
+        System.out.println(LAE.getWorkerReport());
+        System.out.println("--- Batch Report ---");
+        System.out.println(report);
+    }
+}
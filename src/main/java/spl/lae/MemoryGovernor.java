@@ -0,0 +1,237 @@
+package spl.lae;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import memory.MatrixStructure;
+import memory.Precision;
+import memory.SharedMatrix;
+import memory.VectorFormat;
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+
+/**
+ * Keeps the bytes of the matrices one run holds alive under a budget.
+ *
+ * Every MATRIX node still waiting to be consumed is live: the leaves, and the intermediates the
+ * run has computed so far. Before a node is computed, the oldest intermediates that are not its
+ * operands are spilled to a memory-mapped temp file until the live bytes plus the node's result
+ * fit the budget; a spilled intermediate is faulted back in when the node consuming it loads it.
+ * Leaves count toward the budget but are never spilled, since the caller may still hold them.
+ *
+ * next picks the node to compute so that the subtree needing the most memory runs first, while
+ * fewer finished results are waiting for it (the Sethi-Ullman order), which lowers the peak.
+ *
+ * One governor per run, used from the run's thread only.
+ */
+final class MemoryGovernor {
+
+    private final long budget;
+    private final Path directory;
+    private final VectorFormat format;
+
+    private final Map<ComputationNode, Long> live = new IdentityHashMap<>(); // bytes of every live matrix
+    private final List<ComputationNode> spillable = new ArrayList<>(); // resident intermediates, oldest first
+    private final Set<ComputationNode> spilled = Collections.newSetFromMap(new IdentityHashMap<>());
+    private long liveBytes = 0; // resident ones only
+
+    private long peakBytes = 0;
+    private long spills = 0;
+    private long spilledBytes = 0;
+    private long faults = 0;
+
+    MemoryGovernor(long budget, Path directory, VectorFormat format, ComputationNode root) {
+        this.budget = budget;
+        this.directory = directory;
+        this.format = format;
+        addLeaves(root);
+        peakBytes = liveBytes;
+    }
+
+    private void addLeaves(ComputationNode node) {
+        if (node.getNodeType() == ComputationNodeType.MATRIX) {
+            long bytes = bytesOf(node);
+            live.put(node, bytes);
+            liveBytes += bytes;
+            return;
+        }
+        for (ComputationNode child : node.getChildren()) {
+            addLeaves(child);
+        }
+    }
+
+    /**
+     * The next node whose operands are all computed, entering first the child whose subtree
+     * peaks highest above the size of its own result.
+     */
+    ComputationNode next(ComputationNode node) {
+        Map<ComputationNode, long[]> plans = new IdentityHashMap<>();
+        while (true) {
+            ComputationNode first = null;
+            long firstExcess = Long.MIN_VALUE;
+            for (ComputationNode child : node.getChildren()) {
+                if (child.getNodeType() == ComputationNodeType.MATRIX) continue;
+                long[] plan = plan(child, plans);
+                if (first == null || plan[0] - plan[1] > firstExcess) {
+                    first = child;
+                    firstExcess = plan[0] - plan[1];
+                }
+            }
+            if (first == null) return node;
+            node = first;
+        }
+    }
+
+    /*
+     * {peak bytes of intermediates while computing the subtree, bytes, rows and columns of its
+     * result}, children in next's order: each child peaks with the results of the children before it still held,
+     * and the node itself needs all their results and its own. Memoized in plans.
+     */
+    private long[] plan(ComputationNode node, Map<ComputationNode, long[]> plans) {
+        long[] plan = plans.get(node);
+        if (plan != null) return plan;
+        if (node.getNodeType() == ComputationNodeType.MATRIX) {
+            plan = new long[] {0, bytesOf(node), node.getRowCount(), node.getColumnCount()};
+            plans.put(node, plan);
+            return plan;
+        }
+        List<long[]> children = new ArrayList<>();
+        for (ComputationNode child : node.getChildren()) {
+            children.add(plan(child, plans));
+        }
+        long[] shape = shapeOf(node.getNodeType(), children);
+        long bytes = shape[0] * shape[1] * (format.getPrecision() == Precision.FLOAT32 ? Float.BYTES : Double.BYTES);
+        List<long[]> computed = new ArrayList<>();
+        for (int i = 0; i < children.size(); i++) {
+            if (node.getChildren().get(i).getNodeType() != ComputationNodeType.MATRIX) computed.add(children.get(i));
+        }
+        computed.sort(Comparator.comparingLong((long[] c) -> c[0] - c[1]).reversed());
+        long held = 0;
+        long peak = 0;
+        for (long[] child : computed) {
+            peak = Math.max(peak, held + child[0]);
+            held += child[1];
+        }
+        plan = new long[] {Math.max(peak, held + bytes), bytes, shape[0], shape[1]};
+        plans.put(node, plan);
+        return plan;
+    }
+
+    // rows and columns of a node's result, from its operands' plans
+    private static long[] shapeOf(ComputationNodeType type, List<long[]> operands) {
+        switch (type) {
+            case TRANSPOSE:
+                return new long[] {operands.get(0)[3], operands.get(0)[2]};
+            case MULTIPLY:
+            case MULTIPLY_ADD:
+                return new long[] {operands.get(0)[2], operands.get(1)[3]};
+            default:
+                return new long[] {operands.get(0)[2], operands.get(0)[3]};
+        }
+    }
+
+    /**
+     * Called before the node is computed: faults its spilled operands back in and spills other
+     * intermediates until its result fits as well.
+     */
+    void beforeCompute(ComputationNode node) {
+        List<ComputationNode> operands = node.getChildren();
+        for (ComputationNode operand : operands) {
+            if (spilled.remove(operand)) {
+                faults++;
+                liveBytes += live.get(operand);
+            }
+        }
+        long result = estimatedBytes(node);
+        for (int i = 0; i < spillable.size() && liveBytes + result > budget; ) {
+            ComputationNode victim = spillable.get(i);
+            if (containsNode(operands, victim) || !spill(victim)) {
+                i++;
+                continue;
+            }
+            spillable.remove(i);
+        }
+        peakBytes = Math.max(peakBytes, liveBytes + result);
+    }
+
+    /**
+     * Called once the node is resolved; operands are its children from before it was computed.
+     */
+    void afterCompute(List<ComputationNode> operands, ComputationNode result) {
+        for (ComputationNode operand : operands) {
+            Long bytes = live.remove(operand);
+            if (bytes != null && !spilled.remove(operand)) liveBytes -= bytes;
+            spillable.remove(operand);
+        }
+        long bytes = bytesOf(result);
+        live.put(result, bytes);
+        liveBytes += bytes;
+        if (result.getBitMatrix() == null) spillable.add(result); // a packed result is already small
+        peakBytes = Math.max(peakBytes, liveBytes);
+    }
+
+    // False if the matrix could not be written out, in which case it stays in memory
+    private boolean spill(ComputationNode node) {
+        Precision precision = node.getPrecision();
+        MatrixStructure structure = node.hasKnownStructure() ? node.getStructure() : null;
+        SharedMatrix old = node.getStoredMatrix();
+        try {
+            // a stored victim is copied vector by vector, a heap one straight from its array
+            node.resolve(old != null ? SharedMatrix.mapped(old, directory)
+                    : SharedMatrix.mapped(node.getMatrix(), format.withPrecision(precision), directory));
+        }
+        catch (IOException e) {
+            return false;
+        }
+        if (old != null) old.release();
+        node.setPrecision(precision);
+        node.setStructure(structure);
+        long bytes = live.get(node);
+        spilled.add(node);
+        liveBytes -= bytes;
+        spills++;
+        spilledBytes += bytes;
+        return true;
+    }
+
+    private static boolean containsNode(List<ComputationNode> nodes, ComputationNode node) {
+        for (ComputationNode n : nodes) {
+            if (n == node) return true;
+        }
+        return false;
+    }
+
+    private long bytesOf(ComputationNode matrix) {
+        long elements = (long) matrix.getRowCount() * matrix.getColumnCount();
+        if (matrix.getBitMatrix() != null) return elements / Byte.SIZE;
+        return elements * (matrix.getPrecision() == Precision.FLOAT32 ? Float.BYTES : Double.BYTES);
+    }
+
+    // Size of the node's result; its operands are all computed
+    private long estimatedBytes(ComputationNode node) {
+        return plan(node, new IdentityHashMap<>())[1];
+    }
+
+    long getPeakBytes() {
+        return peakBytes;
+    }
+
+    long getSpills() {
+        return spills;
+    }
+
+    long getSpilledBytes() {
+        return spilledBytes;
+    }
+
+    long getFaults() {
+        return faults;
+    }
+}
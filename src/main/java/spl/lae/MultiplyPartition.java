@@ -0,0 +1,33 @@
+package spl.lae;
+
+/**
+ * How the work of a general (m x k) * (k x n) multiply is split into tasks.
+ * ROWS gives every row of the result its own task (the default kernel),
+ * COLUMNS gives every task a block of result columns,
+ * INNER splits the shared dimension k into partial products that are summed afterwards.
+ */
+public enum MultiplyPartition {
+    ROWS,
+    COLUMNS,
+    INNER;
+
+    // an inner chunk shorter than this is not worth a partial product and a reduction
+    static final int MIN_INNER_CHUNK = 256;
+
+    /**
+     * Picks the partition that keeps every worker busy: rows while there are enough of them,
+     * otherwise columns, otherwise the inner dimension if it is long enough to split.
+     */
+    public static MultiplyPartition choose(int rows, int inner, int columns, int workers) {
+        if (rows >= workers) {
+            return ROWS;
+        }
+        if (columns >= workers && columns >= rows) {
+            return COLUMNS;
+        }
+        if (inner >= (long) workers * MIN_INNER_CHUNK) {
+            return INNER;
+        }
+        return columns > rows ? COLUMNS : ROWS;
+    }
+}
@@ -0,0 +1,69 @@
+package spl.lae;
+
+import memory.Precision;
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+
+/**
+ * Compares a reduced precision result with the FLOAT64 result of the same expression.
+ */
+public class PrecisionReport {
+
+    private final double maxAbsError;
+    private final double maxRelError;
+
+    private PrecisionReport(double maxAbsError, double maxRelError) {
+        this.maxAbsError = maxAbsError;
+        this.maxRelError = maxRelError;
+    }
+
+    /**
+     * Evaluates a FLOAT64 copy of the expression and measures how far the given result is from it.
+     * The copy must be taken before the original tree was run, since run() resolves it in place.
+     */
+    public static PrecisionReport against(double[][] result, ComputationNode untouchedCopy, int numThreads) {
+        clearPrecisionTags(untouchedCopy);
+        try (LinearAlgebraEngine reference = new LinearAlgebraEngine(numThreads)) {
+            return compare(result, reference.run(untouchedCopy).getMatrix());
+        }
+    }
+
+    public static PrecisionReport compare(double[][] result, double[][] reference) {
+        if (result.length != reference.length) throw new IllegalArgumentException("Results have different number of rows");
+        double maxAbs = 0;
+        double maxRel = 0;
+        for (int i = 0; i < result.length; i++) {
+            if (result[i].length != reference[i].length) throw new IllegalArgumentException("Results have different number of columns");
+            for (int j = 0; j < result[i].length; j++) {
+                double abs = Math.abs(result[i][j] - reference[i][j]);
+                maxAbs = Math.max(maxAbs, abs);
+                if (reference[i][j] != 0) {
+                    maxRel = Math.max(maxRel, abs / Math.abs(reference[i][j]));
+                }
+            }
+        }
+        return new PrecisionReport(maxAbs, maxRel);
+    }
+
+    private static void clearPrecisionTags(ComputationNode node) {
+        node.setPrecision(Precision.FLOAT64);
+        if (node.getNodeType() != ComputationNodeType.MATRIX) {
+            for (ComputationNode child : node.getChildren()) {
+                clearPrecisionTags(child);
+            }
+        }
+    }
+
+    public double getMaxAbsError() {
+        return maxAbsError;
+    }
+
+    public double getMaxRelError() {
+        return maxRelError;
+    }
+
+    @Override
+    public String toString() {
+        return "Max absolute error vs FLOAT64: " + maxAbsError + "\nMax relative error vs FLOAT64: " + maxRelError;
+    }
+}
@@ -0,0 +1,354 @@
+package spl.lae;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import memory.BitMatrix;
+import memory.Precision;
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+
+/**
+ * Results of computed subtrees, keyed by a hash of the subtree's content: its operators, their
+ * parameters and the values of its leaf matrices. A run that meets a subtree an earlier run, or
+ * another file, already computed takes the stored result instead of computing it again.
+ *
+ * Entries stay in memory up to maxBytes of values, evicting the least recently (LRU) or least
+ * frequently (LFU) used entry first. With a directory, every entry is also written there, so it
+ * outlives eviction and the process and can be shared by server and batch runs; the directory is
+ * trimmed to maxDiskBytes, least recently used file first. Thread-safe.
+ */
+public class ResultCache {
+
+    public enum Eviction {
+        LRU,
+        LFU
+    }
+
+    private static final String SUFFIX = ".bin";
+    private static final long ENTRY_OVERHEAD = 64; // object headers and row arrays, roughly
+
+    private static final class Entry {
+        final double[][] values;
+        final Precision precision;
+        final boolean packed; // the result was a 0/1 matrix kept as a BitMatrix
+        final long bytes;
+        long uses = 0;
+        Entry(double[][] values, Precision precision, boolean packed) {
+            this.values = values;
+            this.precision = precision;
+            this.packed = packed;
+            long elements = 0;
+            for (double[] row : values) elements += row.length;
+            this.bytes = elements * Double.BYTES + ENTRY_OVERHEAD;
+        }
+    }
+
+    private final long maxBytes;
+    private final Eviction eviction;
+    private final Path directory; // null: memory only
+    private final long maxDiskBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true); // least recently used first
+    private long bytes = 0;
+    private long diskBytes = 0;
+
+    private long hits = 0;
+    private long diskHits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public ResultCache(long maxBytes, Eviction eviction) {
+        if (maxBytes < 1) throw new IllegalArgumentException("maxBytes must be positive");
+        if (eviction == null) throw new IllegalArgumentException("eviction cannot be null");
+        this.maxBytes = maxBytes;
+        this.eviction = eviction;
+        this.directory = null;
+        this.maxDiskBytes = 0;
+    }
+
+    /**
+     * A cache backed by a directory, which is created if needed. Entries already in it, for
+     * example from an earlier process, are found on lookup.
+     */
+    public ResultCache(long maxBytes, Eviction eviction, Path directory, long maxDiskBytes) throws IOException {
+        if (maxBytes < 1 || maxDiskBytes < 1) throw new IllegalArgumentException("cache sizes must be positive");
+        if (eviction == null || directory == null) throw new IllegalArgumentException("cache settings cannot be null");
+        this.maxBytes = maxBytes;
+        this.eviction = eviction;
+        this.directory = Files.createDirectories(directory);
+        this.maxDiskBytes = maxDiskBytes;
+        for (Path file : cacheFiles()) {
+            diskBytes += Files.size(file);
+        }
+    }
+
+    /**
+     * Content key of every operation node under root, for an engine computing with the given
+     * settings; nodes with equal keys have equal results. Leaves get no key of their own.
+     */
+    static Map<ComputationNode, String> keys(ComputationNode root, String settings) {
+        Map<ComputationNode, String> keys = new IdentityHashMap<>();
+        keyOf(root, settings, keys);
+        return keys;
+    }
+
+    private static String keyOf(ComputationNode node, String settings, Map<ComputationNode, String> keys) {
+        MessageDigest digest = sha256();
+        digest.update(settings.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) node.getNodeType().ordinal());
+        digest.update((byte) node.getPrecision().ordinal());
+        if (node.getNodeType() == ComputationNodeType.MATRIX) {
+            double[][] values = node.getMatrix();
+            ByteBuffer header = ByteBuffer.allocate(2 * Integer.BYTES);
+            header.putInt(values.length).putInt(values.length == 0 ? 0 : values[0].length);
+            digest.update(header.array());
+            for (double[] row : values) {
+                ByteBuffer buffer = ByteBuffer.allocate(row.length * Double.BYTES);
+                buffer.asDoubleBuffer().put(row);
+                digest.update(buffer.array());
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        }
+        ByteBuffer params = ByteBuffer.allocate(Integer.BYTES + 2 * Double.BYTES + 1);
+        params.putInt(node.getExponent()).putDouble(node.getAlpha()).putDouble(node.getBeta())
+                .put((byte) (node.isBooleanSemiring() ? 1 : 0));
+        digest.update(params.array());
+        for (ComputationNode child : node.getChildren()) {
+            digest.update(keyOf(child, settings, keys).getBytes(StandardCharsets.UTF_8));
+        }
+        String key = HexFormat.of().formatHex(digest.digest());
+        keys.put(node, key);
+        return key;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JDK ships SHA-256
+        }
+    }
+
+    /**
+     * Resolves the node with the stored result for key, from memory or else from disk.
+     * Returns false, counting a miss, if there is none.
+     */
+    public boolean resolve(ComputationNode node, String key) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry != null) {
+                entry.uses++;
+                hits++;
+            }
+        }
+        if (entry == null) {
+            entry = readFromDisk(key);
+            synchronized (this) {
+                if (entry == null) {
+                    misses++;
+                    return false;
+                }
+                diskHits++;
+                entry.uses++;
+                remember(key, entry);
+            }
+        }
+        if (entry.packed) {
+            node.resolve(BitMatrix.fromDense(entry.values));
+        }
+        else {
+            node.resolve(copyOf(entry.values)); // the run may change its result in place
+        }
+        node.setPrecision(entry.precision);
+        return true;
+    }
+
+    /** Stores the result of a node that was just computed. */
+    public void put(String key, ComputationNode resolved) {
+        // getMatrix already copies packed and stored results
+        double[][] values = resolved.getBitMatrix() != null || resolved.getStoredMatrix() != null
+                ? resolved.getMatrix() : copyOf(resolved.getMatrix());
+        Entry entry = new Entry(values, resolved.getPrecision(), resolved.getBitMatrix() != null);
+        synchronized (this) {
+            if (entries.containsKey(key)) return;
+            remember(key, entry);
+        }
+        writeToDisk(key, entry);
+    }
+
+    // Caller holds the lock
+    private void remember(String key, Entry entry) {
+        if (entry.bytes > maxBytes) return; // would evict everything else and then not fit
+        if (entries.containsKey(key)) return; // a concurrent run got there first
+        entries.put(key, entry);
+        bytes += entry.bytes;
+        while (bytes > maxBytes) {
+            String victim = victim(key);
+            bytes -= entries.remove(victim).bytes;
+            evictions++;
+        }
+    }
+
+    /*
+     * Caller holds the lock. The entry just added is spared, or LFU would always evict it, having
+     * no uses yet; ties in use count go to the least recently used entry.
+     */
+    private String victim(String added) {
+        Map.Entry<String, Entry> victim = null;
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            if (e.getKey().equals(added)) continue;
+            if (victim == null) {
+                victim = e;
+                if (eviction == Eviction.LRU) break;
+            }
+            else if (e.getValue().uses < victim.getValue().uses) {
+                victim = e;
+            }
+        }
+        return victim.getKey();
+    }
+
+    private static double[][] copyOf(double[][] values) {
+        double[][] copy = new double[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            copy[i] = values[i].clone();
+        }
+        return copy;
+    }
+
+    // Disk errors only cost the disk tier: a file that cannot be read is a miss, one that cannot be written is skipped
+
+    private Entry readFromDisk(String key) {
+        if (directory == null) return null;
+        Path file = directory.resolve(key + SUFFIX);
+        if (!Files.exists(file)) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            Precision precision = Precision.values()[in.readInt()];
+            boolean packed = in.readBoolean();
+            int rows = in.readInt();
+            int cols = in.readInt();
+            double[][] values = new double[rows][cols];
+            for (double[] row : values) {
+                for (int j = 0; j < cols; j++) row[j] = in.readDouble();
+            }
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return new Entry(values, precision, packed);
+        }
+        catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, Entry entry) {
+        if (directory == null) return;
+        Path file = directory.resolve(key + SUFFIX);
+        if (Files.exists(file)) return;
+        try {
+            // written aside and moved in, so a concurrent reader never sees half a file
+            Path temp = Files.createTempFile(directory, key, ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(entry.precision.ordinal());
+                out.writeBoolean(entry.packed);
+                out.writeInt(entry.values.length);
+                out.writeInt(entry.values.length == 0 ? 0 : entry.values[0].length);
+                for (double[] row : entry.values) {
+                    for (double v : row) out.writeDouble(v);
+                }
+            }
+            long size = Files.size(temp);
+            // checked and moved under the lock, so a key another run stored meanwhile is not counted twice
+            synchronized (this) {
+                if (Files.exists(file)) {
+                    Files.delete(temp);
+                    return;
+                }
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+                diskBytes += size;
+                if (diskBytes > maxDiskBytes) trimDisk();
+            }
+        }
+        catch (IOException e) {
+            // the memory tier still has the entry
+        }
+    }
+
+    // Caller holds the lock
+    private void trimDisk() throws IOException {
+        List<Path> files = cacheFiles();
+        files.sort(Comparator.comparing(ResultCache::lastModified));
+        for (Path file : files) {
+            if (diskBytes <= maxDiskBytes) return;
+            long size = Files.size(file);
+            if (Files.deleteIfExists(file)) diskBytes -= size;
+        }
+    }
+
+    private List<Path> cacheFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return new ArrayList<>(files.filter(p -> p.getFileName().toString().endsWith(SUFFIX)).toList());
+        }
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        }
+        catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    public synchronized long getHits() {
+        return hits + diskHits;
+    }
+
+    public synchronized long getDiskHits() {
+        return diskHits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        long lookups = hits + diskHits + misses;
+        return String.format("Cache: hits %d (%d from disk), misses %d, hit rate %.1f%%, entries %d, %d of %d bytes, evicted %d (%s)",
+                hits + diskHits, diskHits, misses, lookups == 0 ? 0.0 : 100.0 * (hits + diskHits) / lookups,
+                entries.size(), bytes, maxBytes, evictions, eviction)
+                + (directory == null ? "" : String.format(", disk %d of %d bytes in %s", diskBytes, maxDiskBytes, directory));
+    }
+}
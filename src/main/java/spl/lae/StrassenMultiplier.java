@@ -0,0 +1,227 @@
+package spl.lae;
+
+import scheduling.CancellationToken;
+import scheduling.Tenant;
+import scheduling.TiredExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Recursive Strassen multiplication of square matrices.
+ * Each level replaces 8 half-size products by 7 plus 18 additions; below the cutover size
+ * a cache-blocked classical kernel is used instead, since the extra additions cost more than they save there.
+ * The top levels of the recursion are expanded on the calling thread and their independent
+ * sub-products run as tasks on the executor; everything below a task runs sequentially in it.
+ *
+ * Numerical error: unlike the classical kernel, whose error is bounded per entry by
+ * n * u * (|A||B|)_ij, Strassen only satisfies a normwise bound of roughly
+ * c * n^(log2 12) * u * max|A| * max|B| (u = 2^-53), because the additions mix entries of
+ * different magnitudes. Results on well-scaled inputs are close to the classical ones, but small entries
+ * next to large ones can lose relative accuracy. Callers that need entrywise accuracy should use the classical path.
+ */
+public class StrassenMultiplier {
+
+    private static final int BLOCK = 64; // tile edge of the classical kernel
+
+    private final TiredExecutor executor;
+    private final int cutover;
+    private final int parallelTasks; // minimum number of leaf products to hand to the executor
+    private final CancellationToken token;
+    private final Tenant tenant; // null runs the products as the executor's default tenant
+
+    /**
+     * @param cutover sub-problems of at most this size use the classical kernel
+     * @param parallelTasks the recursion is expanded until it yields at least this many independent products
+     */
+    public StrassenMultiplier(TiredExecutor executor, int cutover, int parallelTasks) {
+        this(executor, cutover, parallelTasks, CancellationToken.none());
+    }
+
+    /**
+     * @param token checked before each leaf product starts, before every sub-product inside it
+     *              and every row of tiles of its classical kernel
+     */
+    public StrassenMultiplier(TiredExecutor executor, int cutover, int parallelTasks, CancellationToken token) {
+        this(executor, cutover, parallelTasks, token, null);
+    }
+
+    /**
+     * @param tenant whose queue the leaf products wait in
+     */
+    public StrassenMultiplier(TiredExecutor executor, int cutover, int parallelTasks, CancellationToken token, Tenant tenant) {
+        if (cutover < 1) throw new IllegalArgumentException("cutover must be positive");
+        this.executor = executor;
+        this.cutover = cutover;
+        this.parallelTasks = parallelTasks;
+        this.token = token == null ? CancellationToken.none() : token;
+        this.tenant = tenant;
+    }
+
+    public double[][] multiply(double[][] a, double[][] b) {
+        int n = a.length;
+        if (n == 0 || a[0].length != n || b.length != n || b[0].length != n) {
+            throw new IllegalArgumentException("Strassen multiplication needs two square matrices of the same size");
+        }
+        Product root = new Product(a, b);
+        List<Runnable> tasks = new ArrayList<>();
+        root.expand(parallelTasks, tasks);
+        if (tenant == null) executor.submitAll(tasks, token);
+        else executor.submitAll(tasks, token, tenant);
+        return root.collect();
+    }
+
+    /**
+     * One node of the expanded recursion: either a leaf computed by a task, or seven children
+     * whose results are combined on the calling thread once every task is done.
+     */
+    private class Product {
+        private final double[][] a;
+        private final double[][] b;
+        private Product[] children = null;
+        private double[][] result;
+
+        Product(double[][] a, double[][] b) {
+            this.a = a;
+            this.b = b;
+        }
+
+        void expand(int wanted, List<Runnable> tasks) {
+            if (wanted <= 1 || a.length <= cutover) {
+                tasks.add(() -> result = strassen(a, b));
+                return;
+            }
+            int n = a.length;
+            int h = (n + 1) / 2;
+            double[][] a11 = quarter(a, 0, 0, h), a12 = quarter(a, 0, h, h), a21 = quarter(a, h, 0, h), a22 = quarter(a, h, h, h);
+            double[][] b11 = quarter(b, 0, 0, h), b12 = quarter(b, 0, h, h), b21 = quarter(b, h, 0, h), b22 = quarter(b, h, h, h);
+            children = new Product[] {
+                new Product(add(a11, a22), add(b11, b22)),
+                new Product(add(a21, a22), b11),
+                new Product(a11, sub(b12, b22)),
+                new Product(a22, sub(b21, b11)),
+                new Product(add(a11, a12), b22),
+                new Product(sub(a21, a11), add(b11, b12)),
+                new Product(sub(a12, a22), add(b21, b22))
+            };
+            int share = (wanted + 6) / 7;
+            for (Product child : children) {
+                child.expand(share, tasks);
+            }
+        }
+
+        double[][] collect() {
+            if (children == null) {
+                return result;
+            }
+            double[][][] m = new double[7][][];
+            for (int i = 0; i < 7; i++) {
+                m[i] = children[i].collect();
+            }
+            return combine(m, a.length);
+        }
+    }
+
+    private double[][] strassen(double[][] a, double[][] b) {
+        token.throwIfCancelled();
+        int n = a.length;
+        if (n <= cutover) {
+            return classical(a, b, token);
+        }
+        int h = (n + 1) / 2;
+        double[][] a11 = quarter(a, 0, 0, h), a12 = quarter(a, 0, h, h), a21 = quarter(a, h, 0, h), a22 = quarter(a, h, h, h);
+        double[][] b11 = quarter(b, 0, 0, h), b12 = quarter(b, 0, h, h), b21 = quarter(b, h, 0, h), b22 = quarter(b, h, h, h);
+        double[][][] m = {
+            strassen(add(a11, a22), add(b11, b22)),
+            strassen(add(a21, a22), b11),
+            strassen(a11, sub(b12, b22)),
+            strassen(a22, sub(b21, b11)),
+            strassen(add(a11, a12), b22),
+            strassen(sub(a21, a11), add(b11, b12)),
+            strassen(sub(a12, a22), add(b21, b22))
+        };
+        return combine(m, n);
+    }
+
+    // C11 = M1 + M4 - M5 + M7, C12 = M3 + M5, C21 = M2 + M4, C22 = M1 - M2 + M3 + M6
+    private static double[][] combine(double[][][] m, int n) {
+        int h = m[0].length;
+        double[][] c = new double[n][n];
+        for (int i = 0; i < h; i++) {
+            for (int j = 0; j < h; j++) {
+                c[i][j] = m[0][i][j] + m[3][i][j] - m[4][i][j] + m[6][i][j];
+                if (j + h < n) c[i][j + h] = m[2][i][j] + m[4][i][j];
+                if (i + h < n) {
+                    c[i + h][j] = m[1][i][j] + m[3][i][j];
+                    if (j + h < n) c[i + h][j + h] = m[0][i][j] - m[1][i][j] + m[2][i][j] + m[5][i][j];
+                }
+            }
+        }
+        return c;
+    }
+
+    /**
+     * Cache-blocked i-k-j product of two square matrices.
+     */
+    static double[][] classical(double[][] a, double[][] b) {
+        return classical(a, b, CancellationToken.none());
+    }
+
+    // checks the token before every row of tiles
+    private static double[][] classical(double[][] a, double[][] b, CancellationToken token) {
+        int n = a.length;
+        double[][] c = new double[n][n];
+        for (int ii = 0; ii < n; ii += BLOCK) {
+            token.throwIfCancelled();
+            for (int kk = 0; kk < n; kk += BLOCK) {
+                for (int jj = 0; jj < n; jj += BLOCK) {
+                    int iEnd = Math.min(ii + BLOCK, n), kEnd = Math.min(kk + BLOCK, n), jEnd = Math.min(jj + BLOCK, n);
+                    for (int i = ii; i < iEnd; i++) {
+                        double[] cRow = c[i];
+                        for (int k = kk; k < kEnd; k++) {
+                            double aik = a[i][k];
+                            double[] bRow = b[k];
+                            for (int j = jj; j < jEnd; j++) {
+                                cRow[j] += aik * bRow[j];
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return c;
+    }
+
+    // h x h block starting at (row, col); entries past the edge of an odd-sized matrix are zero padding
+    private static double[][] quarter(double[][] m, int row, int col, int h) {
+        int n = m.length;
+        double[][] q = new double[h][h];
+        for (int i = 0; i < h && row + i < n; i++) {
+            int count = Math.min(h, n - col);
+            System.arraycopy(m[row + i], col, q[i], 0, count);
+        }
+        return q;
+    }
+
+    private static double[][] add(double[][] x, double[][] y) {
+        int n = x.length;
+        double[][] r = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                r[i][j] = x[i][j] + y[i][j];
+            }
+        }
+        return r;
+    }
+
+    private static double[][] sub(double[][] x, double[][] y) {
+        int n = x.length;
+        double[][] r = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                r[i][j] = x[i][j] - y[i][j];
+            }
+        }
+        return r;
+    }
+}
@@ -0,0 +1,60 @@
+package memory;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+public class BitMatrixTest {
+
+    @Test
+    @DisplayName("isBinary: only matrices of 0/1 entries qualify")
+    void isBinaryDetection() {
+        assertTrue(BitMatrix.isBinary(new double[][]{{0,1},{1,0}}));
+        assertFalse(BitMatrix.isBinary(new double[][]{{0,2},{1,0}}));
+        assertFalse(BitMatrix.isBinary(new double[][]{{0,0.5}}));
+        assertFalse(BitMatrix.isBinary(new double[0][0]));
+    }
+
+    @Test
+    @DisplayName("fromDense/toDense round trip across a word boundary")
+    void roundTripWideRows() {
+        double[][] dense = new double[2][130];
+        dense[0][0] = 1; dense[0][64] = 1; dense[1][129] = 1;
+        BitMatrix bits = BitMatrix.fromDense(dense);
+        assertTrue(bits.get(0, 64));
+        assertFalse(bits.get(0, 63));
+        double[][] back = bits.toDense();
+        assertArrayEquals(dense[0], back[0], 0.0, "output:" + Arrays.toString(back[0]));
+        assertArrayEquals(dense[1], back[1], 0.0, "output:" + Arrays.toString(back[1]));
+    }
+
+    @Test
+    @DisplayName("countMultiplyRow: counts length-2 paths")
+    void countMultiply() {
+        // 0 -> 1, 0 -> 2, 1 -> 2, 2 -> 0
+        BitMatrix a = BitMatrix.fromDense(new double[][]{{0,1,1},{0,0,1},{1,0,0}});
+        BitMatrix aT = a.transpose();
+        double[] out = new double[3];
+        a.countMultiplyRow(0, aT, out);
+        assertArrayEquals(new double[]{1,0,1}, out, 0.0, "output:" + Arrays.toString(out));
+    }
+
+    @Test
+    @DisplayName("booleanMultiplyRow: ORs the reachable rows")
+    void booleanMultiply() {
+        BitMatrix a = BitMatrix.fromDense(new double[][]{{0,1,1},{0,0,1},{1,0,0}});
+        long[] out = new long[BitMatrix.wordCount(3)];
+        a.booleanMultiplyRow(0, a, out);
+        BitMatrix row = BitMatrix.fromRows(new long[][]{out}, 3);
+        assertArrayEquals(new double[]{1,0,1}, row.toDense()[0], 0.0);
+    }
+
+    @Test
+    @DisplayName("multiply: dimension mismatch throws")
+    void multiplyMismatchThrows() {
+        BitMatrix a = BitMatrix.fromDense(new double[][]{{1,0}});
+        BitMatrix b = BitMatrix.fromDense(new double[][]{{1},{0},{1}});
+        assertThrows(IllegalArgumentException.class, () -> a.booleanMultiplyRow(0, b, new long[1]));
+    }
+}
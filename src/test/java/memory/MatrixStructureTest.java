@@ -0,0 +1,56 @@
+package memory;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+public class MatrixStructureTest {
+
+    @Test
+    @DisplayName("analyze: identity, diagonal and general matrices")
+    void analyzeBasicKinds() {
+        assertEquals(MatrixStructure.Kind.IDENTITY, MatrixStructure.analyze(new double[][]{{1,0},{0,1}}).getKind());
+        assertEquals(MatrixStructure.Kind.DIAGONAL, MatrixStructure.analyze(new double[][]{{2,0},{0,1}}).getKind());
+        assertEquals(MatrixStructure.Kind.GENERAL, MatrixStructure.analyze(new double[][]{{1,2},{3,4}}).getKind());
+        assertEquals(MatrixStructure.Kind.GENERAL, MatrixStructure.analyze(new double[][]{{1,0,0}}).getKind());
+    }
+
+    @Test
+    @DisplayName("analyze: triangular and banded matrices")
+    void analyzeTriangularAndBanded() {
+        MatrixStructure lower = MatrixStructure.analyze(new double[][]{{1,0,0},{2,3,0},{4,5,6}});
+        assertEquals(MatrixStructure.Kind.LOWER_TRIANGULAR, lower.getKind());
+        assertEquals(0, lower.firstColumn(2));
+        assertEquals(2, lower.lastColumn(2));
+
+        double[][] tridiagonal = new double[12][12];
+        for (int i = 0; i < 12; i++) {
+            tridiagonal[i][i] = 2;
+            if (i > 0) tridiagonal[i][i - 1] = -1;
+            if (i < 11) tridiagonal[i][i + 1] = -1;
+        }
+        MatrixStructure band = MatrixStructure.analyze(tridiagonal);
+        assertEquals(MatrixStructure.Kind.BANDED, band.getKind());
+        assertEquals(4, band.firstColumn(5));
+        assertEquals(6, band.lastColumn(5));
+    }
+
+    @Test
+    @DisplayName("negated and transposed carry the structure")
+    void negateAndTransposeCarryStructure() {
+        MatrixStructure identity = MatrixStructure.analyze(new double[][]{{1,0},{0,1}});
+        assertEquals(MatrixStructure.Kind.DIAGONAL, identity.negated().getKind());
+        assertEquals(MatrixStructure.Kind.IDENTITY, identity.transposed().getKind());
+
+        MatrixStructure lower = MatrixStructure.analyze(new double[][]{{1,0,0},{2,3,0},{4,5,6}});
+        assertEquals(MatrixStructure.Kind.UPPER_TRIANGULAR, lower.transposed().getKind());
+        assertEquals(MatrixStructure.Kind.LOWER_TRIANGULAR, lower.negated().getKind());
+    }
+
+    @Test
+    @DisplayName("analyze: bit-packed identity is recognised without unpacking")
+    void analyzeBitMatrix() {
+        BitMatrix identity = BitMatrix.fromDense(new double[][]{{1,0,0},{0,1,0},{0,0,1}});
+        assertEquals(MatrixStructure.Kind.IDENTITY, MatrixStructure.analyze(identity).getKind());
+    }
+}
@@ -1,9 +1,16 @@
 package memory;
 
 import static org.junit.jupiter.api.Assertions.*;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
 
 public class SharedMatrixTest {
 
@@ -243,4 +250,123 @@ public class SharedMatrixTest {
         assertEquals(2, out.length, "output:[" + out.length + "] expected:[2]");
     }
 
+    // ----------------- off-heap storage -----------------
+
+    @Test
+    @DisplayName("off-heap: load and read back match the heap matrix")
+    void offHeapRoundTrip() {
+        double[][] data = { {1,2,3}, {4,5,6} };
+        SharedMatrix m = SharedMatrix.empty(StorageMode.OFF_HEAP);
+        m.loadColumnMajor(data);
+        assertEquals(StorageMode.OFF_HEAP, m.get(0).getStorageMode(), "output:[" + m.get(0).getStorageMode() + "] expected:[OFF_HEAP]");
+        double[][] out = m.readRowMajor();
+        assertArrayEquals(data[0], out[0], 1e-9, "output:" + Arrays.toString(out[0]) + " expected:" + Arrays.toString(data[0]));
+        assertArrayEquals(data[1], out[1], 1e-9, "output:" + Arrays.toString(out[1]) + " expected:" + Arrays.toString(data[1]));
+    }
+
+    @Test
+    @DisplayName("release: empties the matrix and invalidates its vectors")
+    void releaseInvalidatesVectors() {
+        SharedMatrix m = new SharedMatrix(new double[][]{{1,2},{3,4}}, StorageMode.OFF_HEAP);
+        SharedVector v = m.get(0);
+        m.release();
+        assertEquals(0, m.length(), "output:[" + m.length() + "] expected:[0]");
+        assertThrows(IllegalStateException.class, () -> v.get(0));
+    }
+
+    @Test
+    @DisplayName("mapped: values survive the round trip through a temp file, FLOAT32 rounded")
+    void mappedRoundTrip(@TempDir Path dir) throws IOException {
+        double[][] data = { {1,2,3}, {4,5,6.1} };
+        SharedMatrix m = SharedMatrix.mapped(data, VectorFormat.DEFAULT, dir);
+        assertEquals(StorageMode.MAPPED, m.getStorageMode(), "output:[" + m.getStorageMode() + "] expected:[MAPPED]");
+        double[][] out = m.readRowMajor();
+        assertArrayEquals(data[1], out[1], 0.0, "output:" + Arrays.toString(out[1]) + " expected:" + Arrays.toString(data[1]));
+
+        SharedMatrix single = SharedMatrix.mapped(data, VectorFormat.DEFAULT.withPrecision(Precision.FLOAT32), dir);
+        assertEquals((double) 6.1f, single.readRowMajor()[1][2], 0.0);
+        single.get(0).negate();
+        assertArrayEquals(new double[]{-1,-2,-3}, single.readRowMajor()[0], 0.0);
+    }
+
+    @Test
+    @DisplayName("mapped: a tall matrix is one mapping, not one per row")
+    void mappedTallMatrix(@TempDir Path dir) throws IOException {
+        double[][] data = new double[100_000][4]; // more rows than the default vm.max_map_count
+        for (int i = 0; i < data.length; i++) data[i][i % 4] = i;
+        SharedMatrix m = SharedMatrix.mapped(data, VectorFormat.DEFAULT, dir);
+        double[][] out = m.readRowMajor();
+        assertArrayEquals(data[99_999], out[99_999], 0.0, "output:" + Arrays.toString(out[99_999]) + " expected:" + Arrays.toString(data[99_999]));
+        assertEquals(12_345, out[12_345][1], 0.0);
+    }
+
+    @Test
+    @DisplayName("blocked: parallel loads, transpose and readback match the serial ones")
+    void blockedCopiesMatchSerial() {
+        double[][] data = new double[300][170]; // neither side a multiple of the block size
+        for (int i = 0; i < data.length; i++) {
+            for (int j = 0; j < data[i].length; j++) data[i][j] = i * 1000 + j;
+        }
+        AtomicInteger tasks = new AtomicInteger();
+        Consumer<List<Runnable>> runner = list -> {
+            tasks.addAndGet(list.size());
+            list.parallelStream().forEach(Runnable::run);
+        };
+
+        SharedMatrix columns = SharedMatrix.empty(StorageMode.OFF_HEAP);
+        columns.loadColumnMajor(data, runner);
+        assertEquals(170, columns.length(), "output:[" + columns.length() + "] expected:[170]");
+        double[][] fromColumns = columns.readRowMajor(runner);
+        SharedMatrix rows = SharedMatrix.empty(StorageMode.OFF_HEAP);
+        rows.loadRowMajor(data, runner);
+        double[][] fromRows = rows.readRowMajor(runner);
+        for (int i = 0; i < data.length; i++) {
+            assertArrayEquals(data[i], fromColumns[i], 0.0, "row " + i);
+            assertArrayEquals(data[i], fromRows[i], 0.0, "row " + i);
+        }
+        assertTrue(tasks.get() > 4, "output:[" + tasks.get() + " tasks] expected:[one per block]");
+
+        tasks.set(0);
+        new SharedMatrix().loadColumnMajor(new double[][]{{1, 2}, {3, 4}}, runner);
+        assertEquals(0, tasks.get(), "output:[" + tasks.get() + "] expected:[0] - small matrices stay on the caller");
+    }
+
+    @Test
+    @DisplayName("stripes: vectors share a lock per stripe, and crossed updates with whole reads finish")
+    @Timeout(10)
+    void stripedLocksDoNotDeadlock() throws InterruptedException {
+        int rows = 2 * SharedMatrix.STRIPES + 5;
+        double[][] data = new double[rows][8];
+        for (double[] row : data) Arrays.fill(row, 1);
+        SharedMatrix a = new SharedMatrix(data, StorageMode.OFF_HEAP);
+        SharedMatrix b = new SharedMatrix(data, StorageMode.OFF_HEAP);
+        assertSame(a.get(0).lock(), a.get(SharedMatrix.STRIPES).lock());
+        assertNotSame(a.get(0).lock(), a.get(1).lock());
+
+        // a += b on one thread and b += a on another take the same two stripes in opposite roles
+        Thread forward = new Thread(() -> {
+            for (int round = 0; round < 200; round++) {
+                for (int i = 0; i < rows; i++) a.get(i).add(b.get(i));
+            }
+        });
+        Thread backward = new Thread(() -> {
+            for (int round = 0; round < 200; round++) {
+                for (int i = rows - 1; i >= 0; i--) b.get(i).add(a.get((i + 1) % rows));
+            }
+        });
+        Thread reader = new Thread(() -> {
+            for (int round = 0; round < 200; round++) {
+                assertEquals(rows, a.readRowMajor().length);
+                assertEquals(rows, b.readRowMajor().length);
+            }
+        });
+        forward.start();
+        backward.start();
+        reader.start();
+        forward.join();
+        backward.join();
+        reader.join();
+        assertEquals(rows, a.length(), "output:[" + a.length() + "] expected:[" + rows + "]");
+    }
+
 }
@@ -254,4 +254,57 @@ public class SharedVectorTest {
         assertEquals(expected, r.dot(c), 1e-9);
     }
 
+    @Test
+    @DisplayName("off-heap: add, negate and vecMatMul match the heap results")
+    void offHeapOperations() {
+        SharedVector a = new SharedVector(new double[]{1.0,2.0}, VectorOrientation.ROW_MAJOR, StorageMode.OFF_HEAP);
+        SharedVector b = new SharedVector(new double[]{3.0,4.0}, VectorOrientation.ROW_MAJOR, StorageMode.OFF_HEAP);
+        a.add(b);
+        a.negate();
+        assertEquals(-4.0, a.get(0), 1e-9);
+        assertEquals(-6.0, a.get(1), 1e-9);
+
+        a.vecMatMul(new SharedMatrix(new double[][]{{1.0,0.0,1.0},{0.0,1.0,1.0}}));
+        assertEquals(3, a.length());
+        assertEquals(StorageMode.OFF_HEAP, a.getStorageMode());
+        assertEquals(-10.0, a.get(2), 1e-9);
+    }
+
+    @Test
+    @DisplayName("float32: stored values are rounded to float")
+    void float32RoundsValues() {
+        VectorFormat format = VectorFormat.of(StorageMode.HEAP, Precision.FLOAT32, Accumulation.DOUBLE);
+        SharedVector v = new SharedVector(new double[]{0.1}, VectorOrientation.ROW_MAJOR, format);
+        assertEquals((double) 0.1f, v.get(0), 0.0);
+    }
+
+    @Test
+    @DisplayName("float32: accumulation policy decides how dot products round")
+    void float32AccumulationPolicy() {
+        double[] row = {16777216.0, 1.0, 1.0}; // 2^24: adding 1 in float is lost
+        double[] col = {1.0, 1.0, 1.0};
+        VectorFormat nativeSums = VectorFormat.of(StorageMode.OFF_HEAP, Precision.FLOAT32, Accumulation.NATIVE);
+        VectorFormat doubleSums = VectorFormat.of(StorageMode.OFF_HEAP, Precision.FLOAT32, Accumulation.DOUBLE);
+
+        SharedVector r1 = new SharedVector(row, VectorOrientation.ROW_MAJOR, nativeSums);
+        SharedVector c1 = new SharedVector(col, VectorOrientation.COLUMN_MAJOR, nativeSums);
+        assertEquals(16777216.0, r1.dot(c1), 0.0);
+
+        SharedVector r2 = new SharedVector(row, VectorOrientation.ROW_MAJOR, doubleSums);
+        SharedVector c2 = new SharedVector(col, VectorOrientation.COLUMN_MAJOR, doubleSums);
+        assertEquals(16777218.0, r2.dot(c2), 0.0);
+    }
+
+    @Test
+    @DisplayName("mulAdd: adds alpha * row * matrix into beta * this")
+    void mulAddAccumulatesIntoThis() {
+        SharedVector c = new SharedVector(new double[]{10.0, 20.0}, VectorOrientation.ROW_MAJOR);
+        SharedVector row = new SharedVector(new double[]{1.0, 2.0}, VectorOrientation.ROW_MAJOR);
+        SharedMatrix m = new SharedMatrix(new double[][]{{1.0, 2.0}, {3.0, 4.0}});
+        c.mulAdd(2.0, row, m, 0.5);
+        assertEquals(2 * 7.0 + 5.0, c.get(0), 1e-9);
+        assertEquals(2 * 10.0 + 10.0, c.get(1), 1e-9);
+        assertThrows(IllegalArgumentException.class, () -> c.mulAdd(1.0, new SharedVector(new double[]{1.0}, VectorOrientation.ROW_MAJOR), m, 1.0));
+    }
+
 }
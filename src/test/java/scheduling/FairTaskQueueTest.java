@@ -0,0 +1,57 @@
+package scheduling;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FairTaskQueueTest {
+
+    @Test
+    void tenantsAreServedInProportionToTheirWeights() {
+        FairTaskQueue<String> queue = new FairTaskQueue<>();
+        Tenant heavy = new Tenant("heavy", 2, Tenant.UNLIMITED);
+        Tenant light = Tenant.of("light");
+        for (int i = 0; i < 4; i++) {
+            queue.add(heavy, "h" + i);
+            queue.add(light, "l" + i);
+        }
+        StringBuilder order = new StringBuilder();
+        for (String task = queue.poll(); task != null; task = queue.poll()) {
+            order.append(task).append(' ');
+        }
+        assertEquals("h0 h1 l0 h2 h3 l1 l2 l3 ", order.toString());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    void cappedTenantIsSkippedUntilATaskFinishes() {
+        FairTaskQueue<String> queue = new FairTaskQueue<>();
+        Tenant capped = new Tenant("capped", 1, 1);
+        Tenant other = Tenant.of("other");
+        queue.add(capped, "c0");
+        queue.add(capped, "c1");
+        queue.add(other, "o0");
+
+        assertEquals("c0", queue.poll());
+        capped.started(0);
+        assertEquals("o0", queue.poll());
+        assertNull(queue.poll(), "output:[task] expected:[null while capped is at its cap]");
+        capped.finished(0);
+        assertEquals("c1", queue.poll());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    void removeIfDropsOnlyTheTenantsMatchingTasks() {
+        FairTaskQueue<String> queue = new FairTaskQueue<>();
+        Tenant a = Tenant.of("a");
+        Tenant b = Tenant.of("b");
+        queue.add(a, "keep");
+        queue.add(a, "drop");
+        queue.add(b, "drop");
+        assertEquals(1, queue.removeIf(a, t -> t.equals("drop")).size());
+        assertEquals(2, queue.size());
+        assertEquals("keep", queue.poll());
+        assertEquals("drop", queue.poll());
+        assertNull(queue.poll());
+    }
+}
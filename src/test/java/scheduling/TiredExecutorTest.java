@@ -5,7 +5,15 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Timeout;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import static org.junit.jupiter.api.Assertions.*;
 
 public class TiredExecutorTest {
@@ -58,9 +66,458 @@ public class TiredExecutorTest {
         executor.shutdown();
     }
 
+    @Test
+    @Timeout(5)
+    void submitDoesNotBlockWhenAllWorkersAreBusy() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(executor.submit(() -> {
+                try { release.await(); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+            }));
+        }
+        assertFalse(futures.get(4).isDone(), "a queued task finished while every worker was blocked");
+        release.countDown();
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get();
+
+        CompletableFuture<Void> failing = executor.submit(() -> { throw new IllegalStateException("boom"); });
+        ExecutionException e = assertThrows(ExecutionException.class, failing::get);
+        assertEquals("boom", e.getCause().getMessage());
+        executor.shutdown();
+    }
+
+    @Test
+    @Timeout(5)
+    void batchesCompleteIndependently() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> slow = executor.submitBatch(List.of(() -> {
+            try { release.await(); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+        }));
+        AtomicInteger counter = new AtomicInteger(0);
+        List<Runnable> quick = new ArrayList<>();
+        for (int i = 0; i < 6; i++) quick.add(counter::incrementAndGet);
+
+        executor.submitAll(quick);
+        assertEquals(6, counter.get());
+        assertFalse(slow.isDone(), "output:[done] expected:[still running]");
+        release.countDown();
+        slow.get();
+        executor.shutdown();
+    }
+
+    @Test
+    @Timeout(5)
+    void submitChunksCoversRangeAndCalibratesSpeeds() throws InterruptedException {
+        int total = 1000;
+        AtomicInteger[] hits = new AtomicInteger[total];
+        for (int i = 0; i < total; i++) hits[i] = new AtomicInteger(0);
+
+        executor.submitChunks(total, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                hits[i].incrementAndGet();
+                double x = 0;
+                for (int k = 0; k < 1000; k++) x += Math.sqrt(k);
+                if (x < 0) throw new IllegalStateException();
+            }
+        });
+
+        for (int i = 0; i < total; i++) {
+            assertEquals(1, hits[i].get(), "output:[" + hits[i].get() + "] expected:[1] at index " + i);
+        }
+        double[] speeds = executor.getWorkerSpeeds();
+        assertEquals(2, speeds.length);
+        assertTrue(speeds[0] > 0 || speeds[1] > 0, "no worker speed was calibrated");
+        assertTrue(executor.getWorkerReport().contains("Speed"));
+        executor.shutdown();
+    }
+
+    @Test
+    @Timeout(5)
+    void spinParkExecutorRunsBatches() throws InterruptedException {
+        executor.shutdown();
+        executor = new TiredExecutor(ExecutorConfig.platform(3).withHandoffMode(HandoffMode.SPIN_PARK));
+        AtomicInteger counter = new AtomicInteger(0);
+        for (int round = 0; round < 50; round++) {
+            List<Runnable> tasks = new ArrayList<>();
+            for (int i = 0; i < 10; i++) tasks.add(counter::incrementAndGet);
+            executor.submitAll(tasks);
+            assertEquals((round + 1) * 10, counter.get());
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    @Timeout(5)
+    void elasticPoolGrowsUnderLoadAndRetiresIdleWorkers() throws InterruptedException {
+        executor.shutdown();
+        executor = new TiredExecutor(ExecutorConfig.elastic(1, 4, 50));
+        CountDownLatch allStarted = new CountDownLatch(4);
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 4; i++) {
+            executor.submit(() -> {
+                allStarted.countDown();
+                try { release.await(); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+            });
+        }
+        assertTrue(allStarted.await(1, TimeUnit.SECONDS), "the pool did not grow to run 4 blocked tasks");
+        assertEquals(4, executor.getWorkerCount());
+        release.countDown();
+
+        while (executor.getWorkerCount() > 1) {
+            Thread.sleep(20);
+        }
+        String report = executor.getWorkerReport();
+        assertTrue(report.contains("grew to 4 workers"), "output:[" + report + "]");
+        assertTrue(report.contains("retired worker"), "output:[" + report + "]");
+
+        AtomicInteger counter = new AtomicInteger(0);
+        executor.submitAll(List.of(counter::incrementAndGet, counter::incrementAndGet));
+        assertEquals(2, counter.get());
+        executor.shutdown();
+    }
+
+    @Test
+    @Timeout(5)
+    void firstFailureCancelsTheRestOfTheBatch() throws InterruptedException {
+        AtomicInteger finished = new AtomicInteger(0);
+        AtomicInteger interrupted = new AtomicInteger(0);
+        CountDownLatch sleeping = new CountDownLatch(1);
+        List<Runnable> tasks = new ArrayList<>();
+        tasks.add(() -> {
+            try {
+                sleeping.countDown();
+                Thread.sleep(10_000);
+                finished.incrementAndGet();
+            } catch (InterruptedException e) {
+                interrupted.incrementAndGet();
+            }
+        });
+        tasks.add(() -> {
+            try { sleeping.await(); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+            throw new IllegalArgumentException("bad row");
+        });
+        for (int i = 0; i < 50; i++) {
+            tasks.add(() -> {
+                try { Thread.sleep(50); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+                finished.incrementAndGet();
+            });
+        }
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> executor.submitAll(tasks));
+        assertEquals("bad row", e.getMessage());
+        assertEquals(1, interrupted.get(), "output:[" + interrupted.get() + "] expected:[1]");
+        assertTrue(finished.get() < 5, "output:[" + finished.get() + "] expected:[<5]");
+
+        // the workers are healthy afterwards and their interrupt flags were cleared
+        AtomicInteger counter = new AtomicInteger(0);
+        List<Runnable> next = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            next.add(() -> {
+                if (!Thread.currentThread().isInterrupted()) counter.incrementAndGet();
+            });
+        }
+        executor.submitAll(next);
+        assertEquals(10, counter.get());
+        executor.shutdown();
+    }
+
+    @Test
+    @Timeout(5)
+    void workerSurvivesATaskThatThrowsAnError() throws Exception {
+        executor.shutdown();
+        executor = new TiredExecutor(1);
+        CompletableFuture<Void> failed = executor.submit(() -> {
+            throw new AssertionError("broken invariant");
+        });
+        ExecutionException e = assertThrows(ExecutionException.class, failed::get);
+        assertTrue(e.getCause() instanceof AssertionError, "output:[" + e.getCause() + "] expected:[AssertionError]");
+
+        AtomicInteger counter = new AtomicInteger(0);
+        List<Runnable> next = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            next.add(counter::incrementAndGet);
+        }
+        executor.submitBatch(next).get();
+        assertEquals(5, counter.get(), "output:[" + counter.get() + "] expected:[5]");
+        executor.shutdown();
+    }
+
+    @Test
+    @Timeout(5)
+    void failingChunkStopsSubmitChunks() throws InterruptedException {
+        AtomicInteger covered = new AtomicInteger(0);
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> executor.submitChunks(100_000, (from, to) -> {
+            if (from == 0) throw new IllegalStateException("first chunk");
+            try { Thread.sleep(1); } catch (InterruptedException ie) { Thread.currentThread().interrupt(); }
+            covered.addAndGet(to - from);
+        }));
+        assertEquals("first chunk", e.getMessage());
+        assertTrue(covered.get() < 100_000, "output:[" + covered.get() + "] expected:[<100000]");
+        executor.shutdown();
+    }
+
+    @Test
+    @Timeout(5)
+    void errorInAChunkFailsTheBatch() throws InterruptedException {
+        AtomicInteger covered = new AtomicInteger(0);
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> executor.submitChunks(100_000, (from, to) -> {
+            if (from == 0) throw new AssertionError("first chunk");
+            try { Thread.sleep(1); } catch (InterruptedException ie) { Thread.currentThread().interrupt(); }
+            covered.addAndGet(to - from);
+        }));
+        assertTrue(e.getCause() instanceof AssertionError, "output:[" + e.getCause() + "] expected:[AssertionError]");
+        assertTrue(covered.get() < 100_000, "output:[" + covered.get() + "] expected:[<100000]");
+
+        AtomicInteger counter = new AtomicInteger(0);
+        List<Runnable> next = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            next.add(counter::incrementAndGet);
+        }
+        executor.submitAll(next);
+        assertEquals(10, counter.get(), "output:[" + counter.get() + "] expected:[10]");
+        executor.shutdown();
+    }
+
+    @Test
+    @Timeout(5)
+    void smallTenantIsServedWhileAnotherHasABacklog() throws Exception {
+        Tenant big = Tenant.of("big");
+        Tenant small = Tenant.of("small");
+        List<Runnable> backlog = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            backlog.add(() -> {
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        CompletableFuture<Void> bigDone = executor.submitBatch(backlog, big);
+
+        AtomicInteger counter = new AtomicInteger(0);
+        executor.submitAll(List.of(counter::incrementAndGet, counter::incrementAndGet), CancellationToken.none(), small);
+        assertEquals(2, counter.get());
+        // without fair queueing the small batch would wait behind the whole backlog
+        assertFalse(bigDone.isDone(), "output:[done] expected:[still running]");
+        bigDone.get();
+        assertEquals(200, big.getTasksRun(), "output:[" + big.getTasksRun() + "] expected:[200]");
+        executor.shutdown();
+    }
+
+    @Test
+    @Timeout(5)
+    void tenantCapLimitsItsRunningTasks() throws InterruptedException {
+        executor.shutdown();
+        executor = new TiredExecutor(4);
+        Tenant capped = new Tenant("capped", 1, 1);
+        executor.registerTenant(capped);
+        AtomicInteger running = new AtomicInteger(0);
+        AtomicInteger maxRunning = new AtomicInteger(0);
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            tasks.add(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+            });
+        }
+        executor.submitAll(tasks, CancellationToken.none(), capped);
+        assertEquals(1, maxRunning.get(), "output:[" + maxRunning.get() + "] expected:[1]");
+        assertTrue(executor.getWorkerReport().contains("Tenant: capped, Weight: 1, Cap: 1, Tasks: 20"));
+        executor.shutdown();
+    }
+
+    @Test
+    @Timeout(5)
+    void blockPolicyHoldsTheSubmitterAtTheBound() throws Exception {
+        executor.shutdown();
+        executor = new TiredExecutor(ExecutorConfig.platform(1).withQueueBound(2, ExecutorConfig.UNBOUNDED_BYTES, OverflowPolicy.BLOCK));
+        AtomicInteger started = new AtomicInteger(0);
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            tasks.add(() -> {
+                started.incrementAndGet();
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        CompletableFuture<Void> done = executor.submitBatch(tasks);
+        // at most 2 tasks waiting and 1 running when the last one is queued
+        assertTrue(started.get() >= 17, "output:[" + started.get() + "] expected:[>=17]");
+        done.get();
+        assertTrue(executor.getWorkerReport().contains("policy BLOCK, blocked "));
+        executor.shutdown();
+    }
+
+    @Test
+    @Timeout(5)
+    void callerRunsPolicyRunsOverflowOnTheSubmitter() throws Exception {
+        executor.shutdown();
+        executor = new TiredExecutor(ExecutorConfig.platform(1).withQueueBound(1, ExecutorConfig.UNBOUNDED_BYTES, OverflowPolicy.CALLER_RUNS));
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> blocker = executor.submit(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        CompletableFuture<Void> queued = executor.submit(() -> {});
+        Thread submitter = Thread.currentThread();
+        AtomicInteger onSubmitter = new AtomicInteger(0);
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            tasks.add(() -> {
+                if (Thread.currentThread() == submitter) onSubmitter.incrementAndGet();
+            });
+        }
+        executor.submitAll(tasks);
+        assertEquals(5, onSubmitter.get(), "output:[" + onSubmitter.get() + "] expected:[5]");
+        release.countDown();
+        blocker.get();
+        queued.get();
+        executor.shutdown();
+    }
+
+    @Test
+    @Timeout(5)
+    void callerRunsKeepsTheSubmittersOwnInterrupt() throws Exception {
+        executor.shutdown();
+        executor = new TiredExecutor(ExecutorConfig.platform(1).withQueueBound(1, ExecutorConfig.UNBOUNDED_BYTES, OverflowPolicy.CALLER_RUNS));
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> blocker = executor.submit(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        CompletableFuture<Void> queued = executor.submit(() -> {});
+        AtomicInteger ran = new AtomicInteger(0);
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            tasks.add(ran::incrementAndGet);
+        }
+        Thread.currentThread().interrupt();
+        executor.submitAll(tasks);
+        assertTrue(Thread.interrupted(), "the submitter's interrupt was cleared");
+        assertEquals(3, ran.get(), "output:[" + ran.get() + "] expected:[3]");
+        release.countDown();
+        blocker.get();
+        queued.get();
+        executor.shutdown();
+    }
+
+    @Test
+    @Timeout(5)
+    void interruptedWaiterCancelsTheBatch() throws Exception {
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch never = new CountDownLatch(1);
+        AtomicInteger stopped = new AtomicInteger(0);
+        AtomicInteger ranLater = new AtomicInteger(0);
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            tasks.add(() -> {
+                started.countDown();
+                try {
+                    never.await();
+                } catch (InterruptedException e) {
+                    stopped.incrementAndGet();
+                }
+            });
+        }
+        for (int i = 0; i < 5; i++) {
+            tasks.add(ranLater::incrementAndGet);
+        }
+        CompletableFuture<Throwable> thrown = new CompletableFuture<>();
+        CompletableFuture<Boolean> flagKept = new CompletableFuture<>();
+        Thread waiter = new Thread(() -> {
+            try {
+                executor.submitAll(tasks);
+                thrown.complete(null);
+            } catch (Throwable t) {
+                thrown.complete(t);
+            }
+            flagKept.complete(Thread.currentThread().isInterrupted());
+        });
+        waiter.start();
+        started.await();
+        waiter.interrupt();
+        assertTrue(thrown.get() instanceof CancellationException, "output:[" + thrown.get() + "] expected:[CancellationException]");
+        assertTrue(flagKept.get(), "the waiter's interrupt flag was not kept");
+        executor.shutdown();
+        assertEquals(2, stopped.get(), "output:[" + stopped.get() + "] expected:[2]");
+        assertEquals(0, ranLater.get(), "output:[" + ranLater.get() + "] expected:[0]");
+    }
+
+    @Test
+    @Timeout(5)
+    void rejectPolicyRefusesWhenTheQueueIsFull() throws Exception {
+        executor.shutdown();
+        executor = new TiredExecutor(ExecutorConfig.platform(1).withQueueBound(ExecutorConfig.UNBOUNDED_TASKS, 100, OverflowPolicy.REJECT));
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> blocker = executor.submit(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        CompletableFuture<Void> queued = executor.submit(() -> {}, 80);
+        assertThrows(RejectedExecutionException.class, () -> executor.submit(() -> {}, 40));
+        CompletableFuture<Void> small = executor.submit(() -> {}, 20);
+        release.countDown();
+        blocker.get();
+        queued.get();
+        small.get();
+        assertTrue(executor.getWorkerReport().contains("rejected 1"));
+        executor.shutdown();
+    }
+
     @Test
     void testShutdownCleansUp() throws InterruptedException {
         executor.shutdown();
         assertTrue(true);
     }
-}
\ No newline at end of file
+    @Test
+    @Timeout(10)
+    void virtualWorkersRunABatchAndTheirTimesAddUp() throws InterruptedException {
+        long start = System.nanoTime();
+        TiredExecutor virtual = new TiredExecutor(ExecutorConfig.virtual(3));
+        AtomicInteger ran = new AtomicInteger();
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            tasks.add(() -> {
+                long until = System.nanoTime() + 50_000;
+                while (System.nanoTime() < until) Thread.onSpinWait();
+                ran.incrementAndGet();
+            });
+        }
+        virtual.submitAll(tasks);
+        virtual.shutdown();
+        long elapsed = System.nanoTime() - start;
+        assertEquals(300, ran.get(), "output:[" + ran.get() + "] expected:[300]");
+
+        // a worker runs one task at a time, so its busy and idle time fit in the wall-clock time
+        String report = virtual.getWorkerReport();
+        Matcher m = Pattern.compile("Time Used:(\\d+),Time Idle:(\\d+)").matcher(report);
+        int workers = 0;
+        while (m.find()) {
+            workers++;
+            long used = Long.parseLong(m.group(1));
+            long idle = Long.parseLong(m.group(2));
+            assertTrue(used > 0, "output:[" + report + "]");
+            assertTrue(used + idle <= elapsed, "output:[used " + used + " + idle " + idle + "] expected:[<= " + elapsed + "]");
+        }
+        assertEquals(3, workers, "output:[" + report + "]");
+    }
+
+}
@@ -124,6 +124,42 @@ public class TiredThreadTest {
         assertEquals(0, a.compareTo(b), "output:[" + a.compareTo(b) + "] expected:[0]");
     }
 
+    @Test
+    @Timeout(5)
+    void spinParkHandoffRunsTasksAfterParking() throws InterruptedException {
+        TiredThread t = new TiredThread(8, 1.0, HandoffMode.SPIN_PARK);
+        t.start();
+        try {
+            for (int i = 0; i < 3; i++) {
+                CountDownLatch ran = new CountDownLatch(1);
+                t.newTask(ran::countDown);
+                assertTrue(ran.await(1, TimeUnit.SECONDS), "output:[timeout] expected:[task ran]");
+                Thread.sleep(20); // long enough for the worker to stop spinning and park
+                assertThrows(IllegalArgumentException.class, () -> t.newTask(null));
+            }
+        } finally {
+            t.shutdown();
+            t.join(1000);
+        }
+        assertFalse(t.isAlive());
+    }
+
+    @Test
+    void speedIsAnAverageOfRecentSamples() {
+        TiredThread t = new TiredThread(7, 1.0);
+        assertEquals(0.0, t.getSpeed(), 1e-12);
+
+        t.recordSpeed(100, 100);
+        assertEquals(1.0, t.getSpeed(), 1e-12);
+
+        t.recordSpeed(100, 200);
+        double speed = t.getSpeed();
+        assertTrue(speed < 1.0 && speed > 0.5, "output:[" + speed + "] expected:[between 0.5 and 1]");
+
+        t.recordSpeed(0, 100);
+        assertEquals(speed, t.getSpeed(), 1e-12);
+    }
+
     @Test
     @Timeout(5)
     void timeIdleAndTimeUsedAccounting() throws InterruptedException {
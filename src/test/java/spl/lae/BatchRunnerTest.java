@@ -0,0 +1,83 @@
+package spl.lae;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import parser.ComputationNode;
+
+public class BatchRunnerTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    @Timeout(10)
+    void directoryBatchWritesEveryOutput() throws Exception {
+        Path in = Files.createDirectory(dir.resolve("in"));
+        Path out = Files.createDirectory(dir.resolve("out"));
+        for (int i = 0; i < 10; i++) {
+            Files.writeString(in.resolve("job" + i + ".json"),
+                    "{\"operator\":\"+\",\"operands\":[[[" + i + ",2]],[[10,20]]]}");
+        }
+        Files.writeString(in.resolve("broken.json"), "{\"operator\":\"+\"");
+        Files.writeString(in.resolve("notes.txt"), "ignored");
+
+        List<BatchRunner.Job> jobs = BatchRunner.listJobs(in, out);
+        assertEquals(11, jobs.size());
+
+        BatchRunner.Report report;
+        try (LinearAlgebraEngine engine = new LinearAlgebraEngine(2)) {
+            report = new BatchRunner(engine, 2).run(jobs);
+        }
+        assertEquals(10, report.getSucceeded());
+        assertEquals(1, report.getFailed());
+        assertTrue(Files.readString(out.resolve("job7.json")).contains("[ 17.0, 22.0 ]"));
+        assertTrue(Files.readString(out.resolve("broken.json")).contains("\"error\""));
+    }
+
+    @Test
+    @Timeout(10)
+    void manifestPathsAreRelativeToTheManifest() throws Exception {
+        Files.writeString(dir.resolve("a.json"), "{\"operator\":\"-\",\"operands\":[[[1,2]]]}");
+        Path manifest = Files.writeString(dir.resolve("jobs.txt"), "# negate\na.json a.out.json\n\n");
+
+        List<BatchRunner.Job> jobs = BatchRunner.listJobs(manifest, dir);
+        assertEquals(1, jobs.size());
+        try (LinearAlgebraEngine engine = new LinearAlgebraEngine(2)) {
+            new BatchRunner(engine, 1).run(jobs);
+        }
+        assertTrue(Files.readString(dir.resolve("a.out.json")).contains("[ -1.0, -2.0 ]"));
+    }
+
+    @Test
+    @Timeout(10)
+    void anErrorInTheComputeStageFailsOnlyItsJob() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            Files.writeString(dir.resolve("job" + i + ".json"), "{\"operator\":\"-\",\"operands\":[[[" + i + "]]]}");
+        }
+        List<BatchRunner.Job> jobs = BatchRunner.listJobs(dir, dir.resolve("out"));
+        Files.createDirectory(dir.resolve("out"));
+        AtomicInteger runs = new AtomicInteger();
+        BatchRunner.Report report;
+        try (LinearAlgebraEngine engine = new LinearAlgebraEngine(2) {
+            @Override
+            public ComputationNode run(ComputationNode computationRoot) {
+                if (runs.incrementAndGet() == 2) throw new StackOverflowError();
+                return super.run(computationRoot);
+            }
+        }) {
+            report = new BatchRunner(engine, 1).run(jobs);
+        }
+        assertEquals(3, report.getSucceeded());
+        assertEquals(1, report.getFailed());
+        assertTrue(Files.readString(dir.resolve("out").resolve("job1.json")).contains("StackOverflowError"));
+    }
+}
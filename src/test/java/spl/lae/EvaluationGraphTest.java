@@ -0,0 +1,132 @@
+package spl.lae;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class EvaluationGraphTest {
+
+    private static double[][] random(int rows, int cols, long seed) {
+        Random rnd = new Random(seed);
+        double[][] m = new double[rows][cols];
+        for (double[] row : m) {
+            for (int j = 0; j < cols; j++) row[j] = rnd.nextInt(19) - 9;
+        }
+        return m;
+    }
+
+    private static ComputationNode node(ComputationNodeType type, ComputationNode... children) {
+        return new ComputationNode(type, List.of(children));
+    }
+
+    // the engine may compute into its leaves' arrays, so every leaf gets a copy
+    private static ComputationNode leaf(double[][] values) {
+        return new ComputationNode(values).deepCopy();
+    }
+
+    // -(A * B + C) * D
+    private static ComputationNode expression(double[][] a, double[][] b, double[][] c, double[][] d) {
+        return node(ComputationNodeType.MULTIPLY,
+                node(ComputationNodeType.NEGATE,
+                        node(ComputationNodeType.ADD,
+                                node(ComputationNodeType.MULTIPLY, leaf(a), leaf(b)),
+                                leaf(c))),
+                leaf(d));
+    }
+
+    private static void assertSame(double[][] expected, double[][] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertArrayEquals(expected[i], actual[i], 1e-9, "row " + i);
+        }
+    }
+
+    @Test
+    @Timeout(5)
+    void changedRowsOfTheLeftOperandOnlyRecomputeThoseRows() {
+        double[][] a = random(8, 6, 1), b = random(6, 5, 2), c = random(8, 5, 3), d = random(5, 4, 4);
+        try (LinearAlgebraEngine engine = new LinearAlgebraEngine(2)) {
+            EvaluationGraph graph = new EvaluationGraph(engine, expression(a, b, c, d));
+            assertEquals(4, graph.getLeafCount());
+            assertSame(engine.run(expression(a, b, c, d)).getMatrix(), graph.evaluate());
+            long recomputed = graph.getRecomputed();
+
+            a[3][1] += 5;
+            graph.updateLeaf(0, a);
+            assertSame(engine.run(expression(a, b, c, d)).getMatrix(), graph.evaluate());
+            // multiply-add, negate and the outer multiply follow row 3 alone
+            assertEquals(recomputed, graph.getRecomputed(), "output:[" + graph + "]");
+            assertEquals(3, graph.getDeltaUpdated(), "output:[" + graph + "]");
+        }
+    }
+
+    @Test
+    @Timeout(5)
+    void changedRowsOfTheRightOperandUpdateTheProductByRank() {
+        double[][] a = random(6, 6, 5), b = random(6, 6, 6);
+        ComputationNode product = node(ComputationNodeType.MULTIPLY, leaf(a), leaf(b));
+        try (LinearAlgebraEngine engine = new LinearAlgebraEngine(2)) {
+            EvaluationGraph graph = new EvaluationGraph(engine, product);
+            graph.evaluate();
+
+            b[2][0] = 100;
+            graph.updateLeaf(1, b);
+            double[][] expected = engine.run(node(ComputationNodeType.MULTIPLY, leaf(a), leaf(b))).getMatrix();
+            assertSame(expected, graph.evaluate());
+            assertEquals(1, graph.getDeltaUpdated(), "output:[" + graph + "]");
+            assertEquals(1, graph.getRecomputed(), "output:[" + graph + "]");
+        }
+    }
+
+    @Test
+    @Timeout(5)
+    void untouchedNodesAreReusedAndReshapedLeavesRecomputeFully() {
+        double[][] a = random(4, 4, 7), b = random(4, 4, 8);
+        ComputationNode sum = node(ComputationNodeType.ADD,
+                node(ComputationNodeType.TRANSPOSE, leaf(a)),
+                node(ComputationNodeType.POWER, leaf(b)));
+        try (LinearAlgebraEngine engine = new LinearAlgebraEngine(2)) {
+            EvaluationGraph graph = new EvaluationGraph(engine, sum);
+            graph.evaluate();
+            graph.updateLeaf(0, a); // same values: nothing to do
+            graph.evaluate();
+            assertEquals(3, graph.getRecomputed(), "output:[" + graph + "]");
+            assertEquals(3, graph.getReused(), "output:[" + graph + "]");
+
+            double[][] wide = random(4, 5, 9);
+            graph.updateLeaf(0, wide);
+            assertThrows(IllegalArgumentException.class, graph::evaluate); // 5x4 + 4x4
+        }
+    }
+
+    @Test
+    @Timeout(5)
+    void failedEvaluationKeepsTheLeafChangesForTheNextOne() {
+        double[][] a = random(8, 6, 1), b = random(6, 5, 2), c = random(8, 5, 3), d = random(5, 4, 4);
+        AtomicBoolean failing = new AtomicBoolean(false);
+        try (LinearAlgebraEngine engine = new LinearAlgebraEngine(2) {
+            @Override
+            public ComputationNode run(ComputationNode computationRoot) {
+                if (failing.get()) throw new IllegalArgumentException("rejected");
+                return super.run(computationRoot);
+            }
+        }) {
+            EvaluationGraph graph = new EvaluationGraph(engine, expression(a, b, c, d));
+            graph.evaluate();
+
+            a[3][1] += 5;
+            graph.updateLeaf(0, a);
+            failing.set(true);
+            assertThrows(IllegalArgumentException.class, graph::evaluate);
+            failing.set(false);
+            assertSame(engine.run(expression(a, b, c, d)).getMatrix(), graph.evaluate());
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package spl.lae;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class LaeServerTest {
+
+    private static final String ADD_JOB = "{\"operator\":\"+\",\"operands\":[[[1,2],[3,4]],[[10,20],[30,40]]]}";
+
+    @Test
+    @Timeout(10)
+    void answersJsonAndFileJobs() throws Exception {
+        try (LaeServer server = new LaeServer(new LinearAlgebraEngine(2), 0, 2)) {
+            server.start();
+            LaeClient client = new LaeClient(server.getPort());
+
+            HttpResponse<String> byBody = client.submitJson(ADD_JOB);
+            assertEquals(200, byBody.statusCode());
+            assertTrue(byBody.body().contains("[ 11.0, 22.0 ]"), "output:[" + byBody.body() + "]");
+
+            Path input = Files.createTempFile("lae-job", ".json");
+            try {
+                Files.writeString(input, ADD_JOB);
+                HttpResponse<String> byPath = client.submitPath(input.toString());
+                assertEquals(200, byPath.statusCode());
+                assertEquals(byBody.body(), byPath.body());
+            } finally {
+                Files.delete(input);
+            }
+        }
+    }
+
+    @Test
+    @Timeout(10)
+    void reportsErrorsAsJson() throws Exception {
+        try (LaeServer server = new LaeServer(new LinearAlgebraEngine(2), 0, 2)) {
+            server.start();
+            LaeClient client = new LaeClient(server.getPort());
+
+            HttpResponse<String> response = client.submitJson("{\"operator\":\"+\",\"operands\":[[[1,2]],[[1],[2]]]}");
+            assertEquals(400, response.statusCode());
+            assertTrue(response.body().contains("\"error\""), "output:[" + response.body() + "]");
+
+            HttpResponse<String> malformed = client.submitJson("not json");
+            assertEquals(400, malformed.statusCode());
+        }
+    }
+
+    @Test
+    @Timeout(20)
+    void concurrentJobsAreAnsweredOrRejected() throws Exception {
+        try (LaeServer server = new LaeServer(new LinearAlgebraEngine(4), 0, 2)) {
+            server.start();
+            LaeClient client = new LaeClient(server.getPort());
+            List<Thread> callers = new ArrayList<>();
+            int[] statuses = new int[8];
+            for (int t = 0; t < statuses.length; t++) {
+                final int id = t;
+                callers.add(new Thread(() -> {
+                    try {
+                        statuses[id] = client.submitJson(ADD_JOB).statusCode();
+                    } catch (Exception e) {
+                        statuses[id] = -1;
+                    }
+                }));
+            }
+            for (Thread caller : callers) caller.start();
+            for (Thread caller : callers) caller.join();
+            for (int status : statuses) {
+                assertTrue(status == 200 || status == 503, "output:[" + status + "] expected:[200 or 503]");
+            }
+        }
+    }
+
+    @Test
+    @Timeout(10)
+    void jobsRunAsTheTenantInTheirHeaderAndUnknownTenantsAreRejected() throws Exception {
+        LinearAlgebraEngine engine = new LinearAlgebraEngine(2);
+        try (LaeServer server = new LaeServer(engine, 0, 2)) {
+            server.defineTenant("reports", 3, 1);
+            server.start();
+            LaeClient client = new LaeClient(server.getPort());
+            client.setTenant("reports");
+            assertEquals(200, client.submitJson(ADD_JOB).statusCode());
+            client.setTenant("adhoc");
+            HttpResponse<String> unknown = client.submitJson(ADD_JOB);
+            assertEquals(400, unknown.statusCode());
+            assertTrue(unknown.body().contains("Unknown tenant: adhoc"), "output:[" + unknown.body() + "]");
+
+            String report = engine.getWorkerReport();
+            assertTrue(report.contains("Tenant: reports, Weight: 3, Cap: 1, Tasks: "), "output:[" + report + "]");
+            assertFalse(report.contains("Tenant: adhoc"), "output:[" + report + "]");
+        }
+    }
+}
@@ -2,12 +2,22 @@ package spl.lae;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import memory.BitMatrix;
+import memory.MatrixStructure;
+import memory.Precision;
+import memory.SharedMatrix;
+import memory.StorageMode;
 import parser.ComputationNode;
 import parser.ComputationNodeType;
+import scheduling.CancellationToken;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 
 public class LinearAlgebraEngineTest {
 
@@ -111,4 +121,366 @@ public class LinearAlgebraEngineTest {
         assertThrows(IllegalArgumentException.class, () -> engine.run(n));
     }
 
+    @Test
+    @Timeout(5)
+    void offHeapModeMatchesHeapMode() {
+        double[][] A = {{1,2}, {3,4}};
+        double[][] B = {{2,0}, {1,2}};
+        double[][] C = {{10, 10}, {10, 10}};
+
+        ComputationNode mul = new ComputationNode(ComputationNodeType.MULTIPLY, List.of(new ComputationNode(A), new ComputationNode(B)));
+        ComputationNode add = new ComputationNode(ComputationNodeType.ADD, List.of(mul, new ComputationNode(C)));
+        ComputationNode root = new ComputationNode(ComputationNodeType.TRANSPOSE, List.of(add));
+
+        double[][] out = new LinearAlgebraEngine(2, StorageMode.OFF_HEAP).run(root).getMatrix();
+
+        assertArrayEquals(new double[]{14.0,20.0}, out[0], 1e-9);
+        assertArrayEquals(new double[]{14.0,18.0}, out[1], 1e-9);
+    }
+
+    @Test
+    @Timeout(5)
+    void float32LeavesComputeInFloat32AndReportError() {
+        double[][] a = {{0.1, 0.2}, {0.3, 0.4}};
+        double[][] b = {{0.5, 0.6}, {0.7, 0.8}};
+        ComputationNode left = new ComputationNode(a);
+        ComputationNode right = new ComputationNode(b);
+        left.setPrecision(Precision.FLOAT32);
+        right.setPrecision(Precision.FLOAT32);
+        ComputationNode root = new ComputationNode(ComputationNodeType.MULTIPLY, List.of(left, right));
+        ComputationNode copy = root.deepCopy();
+
+        ComputationNode result = new LinearAlgebraEngine(2).run(root);
+        double[][] out = result.getMatrix();
+
+        assertEquals(Precision.FLOAT32, result.getPrecision());
+        assertEquals((double) (float) out[0][0], out[0][0], 0.0);
+        PrecisionReport report = PrecisionReport.against(out, copy, 2);
+        assertTrue(report.getMaxAbsError() > 0);
+        assertTrue(report.getMaxRelError() < 1e-6);
+    }
+
+    @Test
+    @Timeout(5)
+    void bitPackedMultiplyCountsPathsAndBooleanSemiringStaysPacked() {
+        double[][] adj = {{0,1,1},{0,0,1},{1,0,0}};
+
+        ComputationNode counts = new ComputationNode(ComputationNodeType.MULTIPLY,
+                List.of(new ComputationNode(BitMatrix.fromDense(adj)), new ComputationNode(BitMatrix.fromDense(adj))));
+        double[][] out = new LinearAlgebraEngine(2).run(counts).getMatrix();
+        assertArrayEquals(new double[]{1,0,1}, out[0], 1e-9);
+        assertArrayEquals(new double[]{1,0,0}, out[1], 1e-9);
+        assertArrayEquals(new double[]{0,1,1}, out[2], 1e-9);
+
+        ComputationNode reach = new ComputationNode(ComputationNodeType.MULTIPLY,
+                new ArrayList<>(List.of(new ComputationNode(adj), new ComputationNode(adj), new ComputationNode(adj))));
+        reach.setBooleanSemiring(true);
+        ComputationNode result = new LinearAlgebraEngine(2).run(reach);
+        assertNotNull(result.getBitMatrix());
+        assertArrayEquals(new double[]{1,1,1}, result.getMatrix()[0], 1e-9);
+    }
+
+    @Test
+    @Timeout(5)
+    void structuredMultipliesMatchDenseResults() {
+        // the engine works in place on the leaf arrays, so every run gets its own copy of a
+        double[][] a = {{1,2,3},{4,5,6},{7,8,9}};
+        double[][] identity = {{1,0,0},{0,1,0},{0,0,1}};
+        double[][] diagonal = {{2,0,0},{0,3,0},{0,0,4}};
+        double[][] lower = {{1,0,0},{2,3,0},{4,5,6}};
+
+        ComputationNode byIdentity = new ComputationNode(ComputationNodeType.MULTIPLY, List.of(new ComputationNode(identity), new ComputationNode(copy(a))));
+        assertArrayEquals(new double[]{4,5,6}, new LinearAlgebraEngine(2).run(byIdentity).getMatrix()[1], 1e-9);
+
+        ComputationNode rowScale = new ComputationNode(ComputationNodeType.MULTIPLY, List.of(new ComputationNode(diagonal), new ComputationNode(copy(a))));
+        assertArrayEquals(new double[]{12,15,18}, new LinearAlgebraEngine(2).run(rowScale).getMatrix()[1], 1e-9);
+
+        ComputationNode columnScale = new ComputationNode(ComputationNodeType.MULTIPLY, List.of(new ComputationNode(copy(a)), new ComputationNode(diagonal)));
+        assertArrayEquals(new double[]{8,15,24}, new LinearAlgebraEngine(2).run(columnScale).getMatrix()[1], 1e-9);
+
+        ComputationNode triangular = new ComputationNode(ComputationNodeType.MULTIPLY, List.of(new ComputationNode(lower), new ComputationNode(copy(a))));
+        assertArrayEquals(new double[]{14,19,24}, new LinearAlgebraEngine(2).run(triangular).getMatrix()[1], 1e-9);
+    }
+
+    @Test
+    @Timeout(5)
+    void structureTagsFollowNegateAndTranspose() {
+        double[][] lower = {{1,0,0},{2,3,0},{4,5,6}};
+        ComputationNode negate = new ComputationNode(ComputationNodeType.NEGATE, List.of(new ComputationNode(lower)));
+        ComputationNode root = new ComputationNode(ComputationNodeType.TRANSPOSE, List.of(negate));
+
+        ComputationNode result = new LinearAlgebraEngine(2).run(root);
+
+        assertTrue(result.hasKnownStructure());
+        assertEquals(MatrixStructure.Kind.UPPER_TRIANGULAR, result.getStructure().getKind());
+        assertArrayEquals(new double[]{-1,-2,-4}, result.getMatrix()[0], 1e-9);
+    }
+
+    @Test
+    void partitionFollowsOperandShapes() {
+        assertEquals(MultiplyPartition.ROWS, MultiplyPartition.choose(100, 100, 100, 4));
+        assertEquals(MultiplyPartition.COLUMNS, MultiplyPartition.choose(2, 50, 100, 4));
+        assertEquals(MultiplyPartition.INNER, MultiplyPartition.choose(4, 100000, 4, 8));
+        assertEquals(MultiplyPartition.ROWS, MultiplyPartition.choose(2, 3, 2, 4));
+    }
+
+    @Test
+    @Timeout(5)
+    void tallSkinnyAndWideMultipliesMatchRowKernel() {
+        int inner = 1100;
+        double[][] a = new double[4][inner];
+        double[][] b = new double[inner][4];
+        double[][] expected = new double[4][4];
+        for (int k = 0; k < inner; k++) {
+            for (int i = 0; i < 4; i++) {
+                a[i][k] = (i + 1) * 0.5;
+                b[k][i] = k % 7;
+            }
+        }
+        for (int i = 0; i < 4; i++)
+            for (int j = 0; j < 4; j++)
+                for (int k = 0; k < inner; k++)
+                    expected[i][j] += a[i][k] * b[k][j];
+
+        ComputationNode splitK = new ComputationNode(ComputationNodeType.MULTIPLY, List.of(new ComputationNode(a), new ComputationNode(b)));
+        double[][] out = new LinearAlgebraEngine(4).run(splitK).getMatrix();
+        for (int i = 0; i < 4; i++) assertArrayEquals(expected[i], out[i], 1e-6);
+
+        double[][] row = {{1, 2}};
+        double[][] wide = {{1, 2, 3, 4, 5, 6}, {6, 5, 4, 3, 2, 1}};
+        ComputationNode columns = new ComputationNode(ComputationNodeType.MULTIPLY, List.of(new ComputationNode(row), new ComputationNode(wide)));
+        assertArrayEquals(new double[]{13, 12, 11, 10, 9, 8}, new LinearAlgebraEngine(4).run(columns).getMatrix()[0], 1e-9);
+    }
+
+    @Test
+    @Timeout(5)
+    void powerUsesRepeatedSquaring() {
+        double[][] fib = {{1, 1}, {1, 0}};
+        ComputationNode power = new ComputationNode("^", List.of(new ComputationNode(copy(fib))));
+        power.setExponent(10);
+        double[][] out = new LinearAlgebraEngine(2).run(power).getMatrix();
+        assertArrayEquals(new double[]{89, 55}, out[0], 1e-9);
+        assertArrayEquals(new double[]{55, 34}, out[1], 1e-9);
+
+        ComputationNode zero = new ComputationNode("^", List.of(new ComputationNode(new double[][]{{2, 3}, {4, 5}})));
+        zero.setExponent(0);
+        double[][] identity = new LinearAlgebraEngine(2).run(zero).getMatrix();
+        assertArrayEquals(new double[]{1, 0}, identity[0], 1e-9);
+        assertArrayEquals(new double[]{0, 1}, identity[1], 1e-9);
+    }
+
+    @Test
+    @Timeout(5)
+    void powerOfNonSquareThrows() {
+        ComputationNode power = new ComputationNode("^", List.of(new ComputationNode(new double[][]{{1, 2, 3}})));
+        power.setExponent(2);
+        assertThrows(IllegalArgumentException.class, () -> new LinearAlgebraEngine(2).run(power));
+    }
+
+    @Test
+    void plannerFusesProductAndSum() {
+        double[][] A = {{1,2}, {3,4}};
+        ComputationNode mul = new ComputationNode(ComputationNodeType.MULTIPLY, List.of(new ComputationNode(A), new ComputationNode(A)));
+        ComputationNode neg = new ComputationNode(ComputationNodeType.NEGATE, List.of(mul));
+        ComputationNode root = new ComputationNode(ComputationNodeType.ADD, List.of(new ComputationNode(A), neg));
+
+        root.fuseMultiplyAdd();
+
+        assertEquals(ComputationNodeType.MULTIPLY_ADD, root.getNodeType());
+        assertEquals(3, root.getChildren().size());
+        assertEquals(-1.0, root.getAlpha(), 0.0);
+    }
+
+    @Test
+    @Timeout(5)
+    void fusedMultiplyAddMatchesSeparateOperations() {
+        double[][] A = {{1,2,3}, {4,5,6}};
+        double[][] B = {{7,8}, {9,10}, {11,12}};
+        double[][] C = {{100,200}, {300,400}};
+
+        ComputationNode mul = new ComputationNode(ComputationNodeType.MULTIPLY, List.of(new ComputationNode(A), new ComputationNode(B)));
+        ComputationNode neg = new ComputationNode(ComputationNodeType.NEGATE, List.of(mul));
+        ComputationNode root = new ComputationNode(ComputationNodeType.ADD, List.of(new ComputationNode(C), neg));
+
+        double[][] out = new LinearAlgebraEngine(2).run(root).getMatrix();
+
+        assertArrayEquals(new double[]{42.0, 136.0}, out[0], 1e-9);
+        assertArrayEquals(new double[]{161.0, 246.0}, out[1], 1e-9);
+    }
+
+    @Test
+    @Timeout(5)
+    void multiplyAddWithIdentityAndNestedProducts() {
+        double[][] identity = {{1,0}, {0,1}};
+        double[][] A = {{2,3}, {4,5}};
+        double[][] C = {{10,10}, {10,10}};
+
+        // I * A * A + C: the three-operand product is nested before fusing
+        ComputationNode mul = new ComputationNode(ComputationNodeType.MULTIPLY,
+                new ArrayList<>(List.of(new ComputationNode(identity), new ComputationNode(copy(A)), new ComputationNode(copy(A)))));
+        ComputationNode root = new ComputationNode(ComputationNodeType.ADD, List.of(mul, new ComputationNode(C)));
+
+        double[][] out = new LinearAlgebraEngine(2).run(root).getMatrix();
+
+        assertArrayEquals(new double[]{26.0, 31.0}, out[0], 1e-9);
+        assertArrayEquals(new double[]{38.0, 47.0}, out[1], 1e-9);
+    }
+
+    @Test
+    @Timeout(5)
+    void engineCanBeReusedUntilClosed() {
+        double[][] a = {{1, 2}, {3, 4}};
+        double[][] b = {{5, 6}, {7, 8}};
+        LinearAlgebraEngine engine = new LinearAlgebraEngine(2);
+        for (int i = 0; i < 3; i++) {
+            ComputationNode n = new ComputationNode(ComputationNodeType.MULTIPLY, List.of(new ComputationNode(copy(a)), new ComputationNode(copy(b))));
+            double[][] out = engine.run(n).getMatrix();
+            assertArrayEquals(new double[]{19.0, 22.0}, out[0], 1e-9);
+            assertArrayEquals(new double[]{43.0, 50.0}, out[1], 1e-9);
+        }
+        engine.close();
+        ComputationNode n = new ComputationNode(ComputationNodeType.NEGATE, List.of(new ComputationNode(copy(a))));
+        assertThrows(IllegalStateException.class, () -> engine.run(n));
+    }
+
+    @Test
+    @Timeout(10)
+    void concurrentRunsShareOneEngine() throws Exception {
+        try (LinearAlgebraEngine engine = new LinearAlgebraEngine(4)) {
+            List<Thread> callers = new ArrayList<>();
+            double[][][] results = new double[8][][];
+            for (int t = 0; t < results.length; t++) {
+                final int id = t;
+                callers.add(new Thread(() -> {
+                    double[][] a = {{id, 1}, {0, id}};
+                    double[][] b = {{1, 2}, {3, 4}};
+                    ComputationNode n = new ComputationNode(ComputationNodeType.ADD, List.of(
+                            new ComputationNode(ComputationNodeType.MULTIPLY, List.of(new ComputationNode(a), new ComputationNode(b))),
+                            new ComputationNode(new double[][]{{1, 1}, {1, 1}})));
+                    results[id] = engine.run(n).getMatrix();
+                }));
+            }
+            for (Thread caller : callers) caller.start();
+            for (Thread caller : callers) caller.join();
+            for (int id = 0; id < results.length; id++) {
+                assertArrayEquals(new double[]{id + 4.0, 2.0 * id + 5.0}, results[id][0], 1e-9);
+                assertArrayEquals(new double[]{3.0 * id + 1.0, 4.0 * id + 1.0}, results[id][1], 1e-9);
+            }
+        }
+    }
+
+    @Test
+    void laterNodesDoNotReleaseAnEarlierNodesOperand() {
+        SharedMatrix held = new SharedMatrix(new double[][]{{1, 2}, {3, 4}});
+        ComputationNode stored = new ComputationNode(new double[][]{{0}});
+        stored.resolve(held);
+        ComputationNode sum = new ComputationNode(ComputationNodeType.ADD,
+                List.of(new ComputationNode(new double[][]{{1, 0}, {0, 1}}), stored));
+        ComputationNode power = new ComputationNode("^", List.of(sum));
+        power.setExponent(2);
+        try (LinearAlgebraEngine engine = new LinearAlgebraEngine(2)) {
+            engine.setStrassen(2, 1); // Strassen leaves the right operand slot as it found it
+            double[][] result = engine.run(power).getMatrix();
+            assertArrayEquals(new double[]{10, 14}, result[0], 1e-9);
+            assertArrayEquals(new double[]{21, 31}, result[1], 1e-9);
+        }
+        assertEquals(2, held.length(), "the operand's stored matrix was released by a later node");
+    }
+
+    @Test
+    void partitionedKernelsStopInsideTheirTask() {
+        double[][] left = new double[2][512];
+        double[][] right = new double[512][4];
+        CancellationToken cancelled = CancellationToken.manual();
+        cancelled.cancel();
+        try (LinearAlgebraEngine engine = new LinearAlgebraEngine(2)) {
+            // run directly, past the executor's check at task start
+            for (Runnable task : engine.createColumnMultiplyTasks(left, right, new double[2][4], cancelled)) {
+                assertThrows(CancellationException.class, task::run);
+            }
+            double[][][] partials = new double[2][][];
+            for (Runnable task : engine.createSplitKMultiplyTasks(left, right, partials, cancelled)) {
+                assertThrows(CancellationException.class, task::run);
+            }
+            assertNull(partials[0]);
+        }
+    }
+
+    @Test
+    @Timeout(10)
+    void deadlineStopsRunawayPowerAndEngineStaysUsable() {
+        double[][] big = new double[300][300];
+        for (int i = 0; i < 300; i++) {
+            for (int j = 0; j < 300; j++) big[i][j] = (i * 7 + j * 3) % 5 + 0.5;
+        }
+        ComputationNode power = new ComputationNode("^", List.of(new ComputationNode(big)));
+        power.setExponent(1000);
+
+        try (LinearAlgebraEngine engine = new LinearAlgebraEngine(2)) {
+            long start = System.nanoTime();
+            CancellationException e = assertThrows(CancellationException.class,
+                    () -> engine.run(power, CancellationToken.withTimeout(20)));
+            assertTrue(e.getMessage().contains("deadline of 20 ms"), "output:[" + e.getMessage() + "]");
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            assertTrue(elapsedMillis < 2000, "output:[" + elapsedMillis + "ms] expected:[<2000ms]");
+
+            CancellationToken cancelled = CancellationToken.manual();
+            cancelled.cancel();
+            ComputationNode negate = new ComputationNode(ComputationNodeType.NEGATE, List.of(new ComputationNode(new double[][]{{1, 2}})));
+            assertThrows(CancellationException.class, () -> engine.run(negate, cancelled));
+
+            ComputationNode add = new ComputationNode(ComputationNodeType.ADD,
+                    List.of(new ComputationNode(new double[][]{{1, 2}}), new ComputationNode(new double[][]{{3, 4}})));
+            assertArrayEquals(new double[]{4, 6}, engine.run(add, CancellationToken.withTimeout(5000)).getMatrix()[0], 1e-9);
+        }
+    }
+
+    @Test
+    @Timeout(10)
+    void memoryBudgetSpillsIntermediatesWithoutChangingTheResult(@TempDir Path spillDir) {
+        double[][][] leaves = new double[6][40][40];
+        for (int k = 0; k < leaves.length; k++) {
+            for (int i = 0; i < 40; i++) {
+                for (int j = 0; j < 40; j++) leaves[k][i][j] = ((i + 1) * (j + 2) * (k + 3)) % 7 - 3;
+            }
+        }
+        double[][] expected;
+        try (LinearAlgebraEngine engine = new LinearAlgebraEngine(2)) {
+            expected = engine.run(budgetTree(leaves)).getMatrix();
+        }
+        // off-heap intermediates are spilled from their vectors, heap ones from their arrays
+        for (StorageMode mode : StorageMode.values()) {
+            if (mode == StorageMode.MAPPED) continue;
+            try (LinearAlgebraEngine engine = new LinearAlgebraEngine(2, mode)) {
+                // far below a single 40x40 matrix, so every intermediate not being consumed is spilled
+                engine.setMemoryBudget(1, spillDir);
+                double[][] out = engine.run(budgetTree(leaves)).getMatrix();
+                for (int i = 0; i < expected.length; i++) {
+                    assertArrayEquals(expected[i], out[i], 0.0, mode + " row " + i);
+                }
+                String report = engine.getWorkerReport();
+                assertTrue(report.contains("Memory: budget 1 bytes"), "output:[" + report + "]");
+                assertFalse(report.contains("spilled 0 matrices"), "output:[" + report + "]");
+                assertFalse(report.contains("faulted in 0"), "output:[" + report + "]");
+            }
+        }
+    }
+
+    // (-(A * B) + C * D)^T * (E * F)
+    private static ComputationNode budgetTree(double[][][] leaves) {
+        List<ComputationNode> nodes = new ArrayList<>();
+        for (double[][] leaf : leaves) nodes.add(new ComputationNode(copy(leaf)));
+        ComputationNode left = new ComputationNode(ComputationNodeType.TRANSPOSE, List.of(new ComputationNode(ComputationNodeType.ADD, List.of(
+                new ComputationNode(ComputationNodeType.NEGATE, List.of(new ComputationNode(ComputationNodeType.MULTIPLY, List.of(nodes.get(0), nodes.get(1))))),
+                new ComputationNode(ComputationNodeType.MULTIPLY, List.of(nodes.get(2), nodes.get(3)))))));
+        return new ComputationNode(ComputationNodeType.MULTIPLY, List.of(left,
+                new ComputationNode(ComputationNodeType.MULTIPLY, List.of(nodes.get(4), nodes.get(5)))));
+    }
+
+    private static double[][] copy(double[][] m) {
+        double[][] c = new double[m.length][];
+        for (int i = 0; i < m.length; i++) c[i] = m[i].clone();
+        return c;
+    }
+
 }
@@ -0,0 +1,161 @@
+package spl.lae;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+public class ResultCacheTest {
+
+    private static final double[][] A = {{1, 2}, {3, 4}};
+    private static final double[][] B = {{5, 6}, {7, 8}};
+
+    private static ComputationNode product() {
+        return new ComputationNode(ComputationNodeType.MULTIPLY, List.of(new ComputationNode(A), new ComputationNode(B)));
+    }
+
+    private static ComputationNode transposedProduct() {
+        return new ComputationNode(ComputationNodeType.TRANSPOSE, List.of(product()));
+    }
+
+    @Test
+    @Timeout(5)
+    void repeatedTreeIsAnsweredFromTheCache() {
+        ResultCache cache = new ResultCache(1 << 20, ResultCache.Eviction.LRU);
+        try (LinearAlgebraEngine engine = new LinearAlgebraEngine(2)) {
+            engine.setResultCache(cache);
+            double[][] first = engine.run(transposedProduct()).getMatrix();
+            assertEquals(0, cache.getHits());
+            assertEquals(2, cache.size(), "output:[" + cache.size() + "] expected:[2]");
+
+            double[][] second = engine.run(transposedProduct()).getMatrix();
+            assertEquals(1, cache.getHits(), "output:[" + cache.getHits() + "] expected:[1]");
+            assertArrayEquals(first[0], second[0], 0.0);
+            assertArrayEquals(first[1], second[1], 0.0);
+            assertArrayEquals(new double[]{19, 43}, second[0], 1e-9);
+
+            // the stored result is a copy: changing an answer does not change the next one
+            second[0][0] = -1;
+            assertEquals(19, engine.run(transposedProduct()).getMatrix()[0][0], 1e-9);
+            assertTrue(engine.getWorkerReport().contains("Cache: hits 2"));
+        }
+    }
+
+    @Test
+    @Timeout(5)
+    void sharedSubtreeIsReusedByAnotherTree() {
+        ResultCache cache = new ResultCache(1 << 20, ResultCache.Eviction.LRU);
+        try (LinearAlgebraEngine engine = new LinearAlgebraEngine(2)) {
+            engine.setResultCache(cache);
+            engine.run(product());
+            double[][] out = engine.run(transposedProduct()).getMatrix();
+            assertEquals(1, cache.getHits(), "output:[" + cache.getHits() + "] expected:[1]");
+            assertArrayEquals(new double[]{22, 50}, out[1], 1e-9);
+
+            // different leaf values get a different key
+            ComputationNode other = new ComputationNode(ComputationNodeType.MULTIPLY,
+                    List.of(new ComputationNode(new double[][]{{1, 2}, {3, 5}}), new ComputationNode(B)));
+            engine.run(other);
+            assertEquals(1, cache.getHits(), "output:[" + cache.getHits() + "] expected:[1]");
+        }
+    }
+
+    @Test
+    void evictsByBytesInLruOrder() {
+        // room for two 2x2 entries
+        ResultCache cache = new ResultCache(2 * (4 * Double.BYTES + 64), ResultCache.Eviction.LRU);
+        cache.put("a", new ComputationNode(new double[][]{{1, 1}, {1, 1}}));
+        cache.put("b", new ComputationNode(new double[][]{{2, 2}, {2, 2}}));
+        assertTrue(cache.resolve(product(), "a")); // a is now the most recently used
+        cache.put("c", new ComputationNode(new double[][]{{3, 3}, {3, 3}}));
+
+        assertEquals(1, cache.getEvictions());
+        assertFalse(cache.resolve(product(), "b"), "output:[hit] expected:[b evicted]");
+        ComputationNode node = product();
+        assertTrue(cache.resolve(node, "a"));
+        assertEquals(1, node.getMatrix()[0][0], 0.0);
+    }
+
+    @Test
+    void lfuKeepsTheMostUsedEntry() {
+        ResultCache cache = new ResultCache(2 * (4 * Double.BYTES + 64), ResultCache.Eviction.LFU);
+        cache.put("a", new ComputationNode(new double[][]{{1, 1}, {1, 1}}));
+        cache.put("b", new ComputationNode(new double[][]{{2, 2}, {2, 2}}));
+        assertTrue(cache.resolve(product(), "a"));
+        assertTrue(cache.resolve(product(), "a"));
+        assertTrue(cache.resolve(product(), "b"));
+        cache.put("c", new ComputationNode(new double[][]{{3, 3}, {3, 3}}));
+
+        assertTrue(cache.resolve(product(), "a"));
+        assertFalse(cache.resolve(product(), "b"), "output:[hit] expected:[b evicted]");
+    }
+
+    @Test
+    @Timeout(5)
+    void diskTierOutlivesTheCache() throws Exception {
+        Path dir = Files.createTempDirectory("lae-cache");
+        try {
+            try (LinearAlgebraEngine engine = new LinearAlgebraEngine(2)) {
+                engine.setResultCache(new ResultCache(1 << 20, ResultCache.Eviction.LRU, dir, 1 << 20));
+                engine.run(transposedProduct());
+            }
+            ResultCache fresh = new ResultCache(1 << 20, ResultCache.Eviction.LRU, dir, 1 << 20);
+            try (LinearAlgebraEngine engine = new LinearAlgebraEngine(2)) {
+                engine.setResultCache(fresh);
+                double[][] out = engine.run(transposedProduct()).getMatrix();
+                assertArrayEquals(new double[]{19, 43}, out[0], 1e-9);
+            }
+            assertEquals(1, fresh.getDiskHits(), "output:[" + fresh.getDiskHits() + "] expected:[1]");
+        } finally {
+            try (Stream<Path> files = Files.list(dir)) {
+                for (Path f : files.toList()) Files.delete(f);
+            }
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    @Timeout(10)
+    void concurrentPutsOfTheSameKeysCountEachFileOnce() throws Exception {
+        Path dir = Files.createTempDirectory("lae-cache");
+        try {
+            // the memory tier holds about one entry, so the keys keep coming back to the disk tier
+            ResultCache cache = new ResultCache(40, ResultCache.Eviction.LRU, dir, 1 << 20);
+            ComputationNode resolved = new ComputationNode(A);
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                Thread thread = new Thread(() -> {
+                    for (int round = 0; round < 20; round++) {
+                        for (int k = 0; k < 10; k++) cache.put("key" + k, resolved);
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) thread.join();
+
+            long onDisk = 0;
+            try (Stream<Path> files = Files.list(dir)) {
+                for (Path f : files.toList()) onDisk += Files.size(f);
+            }
+            Matcher m = Pattern.compile("disk (\\d+) of").matcher(cache.toString());
+            assertTrue(m.find(), "output:[" + cache + "]");
+            assertEquals(onDisk, Long.parseLong(m.group(1)), "output:[" + cache + "]");
+        } finally {
+            try (Stream<Path> files = Files.list(dir)) {
+                for (Path f : files.toList()) Files.delete(f);
+            }
+            Files.delete(dir);
+        }
+    }
+}
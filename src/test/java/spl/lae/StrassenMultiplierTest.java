@@ -0,0 +1,79 @@
+package spl.lae;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+import scheduling.TiredExecutor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.Random;
+
+public class StrassenMultiplierTest {
+
+    private static double[][] random(int n, long seed) {
+        Random r = new Random(seed);
+        double[][] m = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                m[i][j] = r.nextDouble() * 2 - 1;
+            }
+        }
+        return m;
+    }
+
+    // normwise bound from the class comment, with a generous constant
+    private static void assertCloseToClassical(double[][] a, double[][] b, double[][] actual) {
+        double[][] expected = StrassenMultiplier.classical(a, b);
+        int n = a.length;
+        double tolerance = 16 * Math.pow(n, Math.log(12) / Math.log(2)) * Math.ulp(1.0);
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                assertEquals(expected[i][j], actual[i][j], tolerance, "output:[" + actual[i][j] + "] expected:[" + expected[i][j] + "] at (" + i + "," + j + ")");
+            }
+        }
+    }
+
+    @Test
+    @Timeout(10)
+    void matchesClassicalOnEvenSize() throws InterruptedException {
+        TiredExecutor executor = new TiredExecutor(4);
+        double[][] a = random(96, 1), b = random(96, 2);
+        assertCloseToClassical(a, b, new StrassenMultiplier(executor, 8, 4).multiply(a, b));
+        executor.shutdown();
+    }
+
+    @Test
+    @Timeout(10)
+    void matchesClassicalOnOddSizeWithPadding() throws InterruptedException {
+        TiredExecutor executor = new TiredExecutor(3);
+        double[][] a = random(75, 3), b = random(75, 4);
+        assertCloseToClassical(a, b, new StrassenMultiplier(executor, 5, 49).multiply(a, b));
+        executor.shutdown();
+    }
+
+    @Test
+    @Timeout(5)
+    void nonSquareThrows() throws InterruptedException {
+        TiredExecutor executor = new TiredExecutor(1);
+        double[][] a = {{1, 2}};
+        assertThrows(IllegalArgumentException.class, () -> new StrassenMultiplier(executor, 1, 1).multiply(a, a));
+        executor.shutdown();
+    }
+
+    @Test
+    @Timeout(10)
+    void engineUsesStrassenAboveThreshold() {
+        double[][] a = random(40, 5), b = random(40, 6);
+        double[][] expected = StrassenMultiplier.classical(a, b);
+        LinearAlgebraEngine engine = new LinearAlgebraEngine(4);
+        engine.setStrassen(32, 4);
+        ComputationNode n = new ComputationNode(ComputationNodeType.MULTIPLY, List.of(new ComputationNode(a), new ComputationNode(b)));
+        double[][] out = engine.run(n).getMatrix();
+        for (int i = 0; i < 40; i++) {
+            assertArrayEquals(expected[i], out[i], 1e-9);
+        }
+    }
+}